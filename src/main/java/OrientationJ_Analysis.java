@@ -38,6 +38,7 @@
 //
 //==============================================================================
 
+import ij.ImagePlus;
 import ij.Macro;
 import ij.plugin.PlugIn;
 import imageware.ImageWare;
@@ -62,6 +63,14 @@ public class OrientationJ_Analysis implements PlugIn {
 		else {
 			OrientationParameters params = new OrientationParameters(OrientationService.ANALYSIS);
 			params.getMacroParameters(Macro.getOptions());
+			if (params.isStreaming()) {
+				ImagePlus imp = GroupImage.getCurrentImagePlus();
+				if (imp == null) {
+					return;
+				}
+				new OrientationProcess(imp.getStack(), params).run();
+				return;
+			}
 			ImageWare source = GroupImage.getCurrentImage();
 			if (source == null) {
 				return;
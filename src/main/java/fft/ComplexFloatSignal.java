@@ -0,0 +1,268 @@
+//==============================================================================
+//
+// Project: Directional Image Analysis - OrientationJ plugin
+// 
+// Author: Daniel Sage
+// 
+// Organization: Biomedical Imaging Group (BIG)
+// Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+//
+// Information: 
+// OrientationJ: http://bigwww.epfl.ch/demo/orientation/
+// MonogenicJ: http://bigwww.epfl.ch/demo/monogenic/
+//  
+//
+// Reference on methods and plugin
+// Z. Püspöki, M. Storath, D. Sage, M. Unser
+// "Transforms and Operators for Directional Bioimage Analysis: A Survey," 
+// Advances in Anatomy, Embryology and Cell Biology, vol. 219, Focus on Bio-Image Informatics, 
+// Springer International Publishing, ch. 3, pp. 69-93, May 21, 2016.
+//
+// Reference on applications
+// E. Fonck, G.G. Feigl, J. Fasel, D. Sage, M. Unser, D.A. Ruefenacht, N. Stergiopulos 
+// "Effect of Aging on Elastin Functionality in Human Cerebral Arteries,"
+// Stroke, vol. 40, no. 7, pp. 2552-2556, July 2009.
+//
+// R. Rezakhaniha, A. Agianniotis, J.T.C. Schrauwen, A. Griffa, D. Sage, C.V.C. Bouten, F.N. van de Vosse, M. Unser, N. Stergiopulos
+// "Experimental Investigation of Collagen Waviness and Orientation in the Arterial Adventitia Using Confocal Laser Scanning Microscopy,"
+// Biomechanics and Modeling in Mechanobiology, vol. 11, no. 3-4, pp. 461-473, 2012.
+
+// Conditions of use: You'll be free to use this software for research purposes,
+// but you should not redistribute it without our consent. In addition, we 
+// expect you to include a citation or acknowledgment whenever you present or 
+// publish results that are based on it.
+//
+// History:
+// - Updated (Daniel Sage, 24 January 2011)
+// - Added the Vector field (Daniel Sage, 1 March 2017)
+//
+//==============================================================================
+
+package fft;
+
+import java.util.Arrays;
+
+/**
+ * Complex signal of size [nx*ny] in single precision, the real and 
+ * imaginary parts interleaved in one array.
+ * 
+ * Half the memory of a ComplexSignal, and the two parts of a sample are 
+ * in the same cache line. The operations are done in place, without 
+ * temporary signals. The FFT2D transforms it directly, the butterflies 
+ * being computed in double precision on each line.
+ */
+public class ComplexFloatSignal implements ComplexLines {
+
+	/** Real part in data[2*k], imaginary part in data[2*k+1]. */
+	public float[] data;
+	public int nx;
+	public int ny;
+
+	/**
+	* Creates an empty signal of size [nx*ny].
+	*/
+	public ComplexFloatSignal(int nx, int ny) {
+		data = new float[2*nx*ny];
+		this.nx = nx;
+		this.ny = ny;
+	}
+
+	/**
+	* Creates a single precision copy of a signal.
+	*/
+	public ComplexFloatSignal(ComplexSignal signal) {
+		this(signal.nx, signal.ny);
+		for(int k=0; k<nx*ny; k++) {
+			data[2*k] = (float)signal.real[k];
+			data[2*k+1] = (signal.imag == null ? 0f : (float)signal.imag[k]);
+		}
+	}
+
+	/**
+	* Returns a double precision copy of the signal.
+	*/
+	public ComplexSignal toComplexSignal() {
+		ComplexSignal out = new ComplexSignal(nx, ny);
+		for(int k=0; k<nx*ny; k++) {
+			out.real[k] = data[2*k];
+			out.imag[k] = data[2*k+1];
+		}
+		return out;
+	}
+
+	/**
+	*/
+	public ComplexFloatSignal duplicate() {
+		ComplexFloatSignal out = new ComplexFloatSignal(nx, ny);
+		System.arraycopy(data, 0, out.data, 0, data.length);
+		return out;
+	}
+
+	/**
+	* Complex multiplication in place.
+	*/
+	public void multiply(ComplexFloatSignal a) {
+		float b[] = a.data;
+		for(int k=0; k<data.length; k+=2) {
+			float re = data[k];
+			float im = data[k+1];
+			data[k] = re*b[k] - im*b[k+1];
+			data[k+1] = re*b[k+1] + im*b[k];
+		}
+	}
+
+	/**
+	* Complex multiplication by the conjugate of a, in place.
+	*/
+	public void multiplyConjugate(ComplexFloatSignal a) {
+		float b[] = a.data;
+		for(int k=0; k<data.length; k+=2) {
+			float re = data[k];
+			float im = data[k+1];
+			data[k] = re*b[k] + im*b[k+1];
+			data[k+1] = im*b[k] - re*b[k+1];
+		}
+	}
+
+	/**
+	* Complex multiply-accumulate in place, this += a*b.
+	*/
+	public void multiplyAdd(ComplexFloatSignal a, ComplexFloatSignal b) {
+		float p[] = a.data;
+		float q[] = b.data;
+		for(int k=0; k<data.length; k+=2) {
+			data[k] += p[k]*q[k] - p[k+1]*q[k+1];
+			data[k+1] += p[k]*q[k+1] + p[k+1]*q[k];
+		}
+	}
+
+	/**
+	* Complex multiply-accumulate by the conjugate in place, this += a*conj(b).
+	*/
+	public void multiplyConjugateAdd(ComplexFloatSignal a, ComplexFloatSignal b) {
+		float p[] = a.data;
+		float q[] = b.data;
+		for(int k=0; k<data.length; k+=2) {
+			data[k] += p[k]*q[k] + p[k+1]*q[k+1];
+			data[k+1] += p[k+1]*q[k] - p[k]*q[k+1];
+		}
+	}
+
+	/**
+	* Sets to zero.
+	*/
+	public void clear() {
+		Arrays.fill(data, 0f);
+	}
+
+	/**
+	* Complex addition in place.
+	*/
+	public void add(ComplexFloatSignal a) {
+		float b[] = a.data;
+		for(int k=0; k<data.length; k++)
+			data[k] += b[k];
+	}
+
+	/**
+	* Conjugate in place.
+	*/
+	public void conjugate() {
+		for(int k=1; k<data.length; k+=2)
+			data[k] = -data[k];
+	}
+
+	/**
+	*/
+	public void multiply(float coef) {
+		for(int k=0; k<data.length; k++)
+			data[k] *= coef;
+	}
+
+	/**
+	* 2D circular shift of the half size, in place with one row of 
+	* temporary storage.
+	*/
+	public void shift() {
+		int nx2 = nx/2;
+		int ny2 = ny/2;
+		float row[] = new float[2*nx];
+		for(int y=0; y<ny; y++) {
+			int k = 2*y*nx;
+			System.arraycopy(data, k, row, 0, 2*nx);
+			System.arraycopy(row, 0, data, k+2*nx2, 2*(nx-nx2));
+			System.arraycopy(row, 2*(nx-nx2), data, k, 2*nx2);
+		}
+		if (ny2 == 0)
+			return;
+		// rotate the rows, one cycle of the permutation y -> y+ny2 at a time
+		int cycles = gcd(ny, ny2);
+		for(int start=0; start<cycles; start++) {
+			System.arraycopy(data, 2*start*nx, row, 0, 2*nx);
+			int y = start;
+			while (true) {
+				int prev = (y - ny2 + ny) % ny;
+				if (prev == start)
+					break;
+				System.arraycopy(data, 2*prev*nx, data, 2*y*nx, 2*nx);
+				y = prev;
+			}
+			System.arraycopy(row, 0, data, 2*y*nx, 2*nx);
+		}
+	}
+
+	private static int gcd(int a, int b) {
+		return (b == 0 ? a : gcd(b, a % b));
+	}
+
+	/**
+	*/
+	public int getWidth() {
+		return nx;
+	}
+
+	/**
+	*/
+	public int getHeight() {
+		return ny;
+	}
+
+	/**
+	*/
+	public void getRow(int y, double re[], double im[]) {
+		for(int x=0, k=2*y*nx; x<nx; x++, k+=2) {
+			re[x] = data[k];
+			im[x] = data[k+1];
+		}
+	}
+
+	/**
+	*/
+	public void putRow(int y, double re[], double im[]) {
+		for(int x=0, k=2*y*nx; x<nx; x++, k+=2) {
+			data[k] = (float)re[x];
+			data[k+1] = (float)im[x];
+		}
+	}
+
+	/**
+	*/
+	public void getColumns(int x, int count, double re[][], double im[][]) {
+		for(int y=0, k=2*x; y<ny; y++, k+=2*nx)
+		for(int j=0; j<count; j++) {
+			re[j][y] = data[k+2*j];
+			im[j][y] = data[k+2*j+1];
+		}
+	}
+
+	/**
+	*/
+	public void putColumns(int x, int count, double re[][], double im[][]) {
+		for(int y=0, k=2*x; y<ny; y++, k+=2*nx)
+		for(int j=0; j<count; j++) {
+			data[k+2*j] = (float)re[j][y];
+			data[k+2*j+1] = (float)im[j][y];
+		}
+	}
+
+}
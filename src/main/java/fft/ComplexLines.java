@@ -0,0 +1,82 @@
+//==============================================================================
+//
+// Project: Directional Image Analysis - OrientationJ plugin
+// 
+// Author: Daniel Sage
+// 
+// Organization: Biomedical Imaging Group (BIG)
+// Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+//
+// Information: 
+// OrientationJ: http://bigwww.epfl.ch/demo/orientation/
+// MonogenicJ: http://bigwww.epfl.ch/demo/monogenic/
+//  
+//
+// Reference on methods and plugin
+// Z. Püspöki, M. Storath, D. Sage, M. Unser
+// "Transforms and Operators for Directional Bioimage Analysis: A Survey," 
+// Advances in Anatomy, Embryology and Cell Biology, vol. 219, Focus on Bio-Image Informatics, 
+// Springer International Publishing, ch. 3, pp. 69-93, May 21, 2016.
+//
+// Reference on applications
+// E. Fonck, G.G. Feigl, J. Fasel, D. Sage, M. Unser, D.A. Ruefenacht, N. Stergiopulos 
+// "Effect of Aging on Elastin Functionality in Human Cerebral Arteries,"
+// Stroke, vol. 40, no. 7, pp. 2552-2556, July 2009.
+//
+// R. Rezakhaniha, A. Agianniotis, J.T.C. Schrauwen, A. Griffa, D. Sage, C.V.C. Bouten, F.N. van de Vosse, M. Unser, N. Stergiopulos
+// "Experimental Investigation of Collagen Waviness and Orientation in the Arterial Adventitia Using Confocal Laser Scanning Microscopy,"
+// Biomechanics and Modeling in Mechanobiology, vol. 11, no. 3-4, pp. 461-473, 2012.
+
+// Conditions of use: You'll be free to use this software for research purposes,
+// but you should not redistribute it without our consent. In addition, we 
+// expect you to include a citation or acknowledgment whenever you present or 
+// publish results that are based on it.
+//
+// History:
+// - Updated (Daniel Sage, 24 January 2011)
+// - Added the Vector field (Daniel Sage, 1 March 2017)
+//
+//==============================================================================
+
+package fft;
+
+/**
+ * Access by lines to a 2D complex signal of size [nx*ny], used by the 
+ * passes of the FFT2D. The lines are exchanged in double precision, 
+ * whatever the storage of the signal.
+ */
+interface ComplexLines {
+
+	/**
+	* Returns the size along x.
+	*/
+	public int getWidth();
+
+	/**
+	* Returns the size along y.
+	*/
+	public int getHeight();
+
+	/**
+	* Copies the row y into re and im, of length nx.
+	*/
+	public void getRow(int y, double re[], double im[]);
+
+	/**
+	* Copies re and im, of length nx, into the row y.
+	*/
+	public void putRow(int y, double re[], double im[]);
+
+	/**
+	* Copies the count adjacent columns starting at x into re[j] and im[j], 
+	* of length ny. The signal is read row by row.
+	*/
+	public void getColumns(int x, int count, double re[][], double im[][]);
+
+	/**
+	* Copies re[j] and im[j], of length ny, into the count adjacent columns 
+	* starting at x. The signal is written row by row.
+	*/
+	public void putColumns(int x, int count, double re[][], double im[][]);
+
+}
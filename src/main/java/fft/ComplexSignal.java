@@ -39,10 +39,12 @@
 //==============================================================================
 package fft;
 
+import java.util.Arrays;
+
 /**
  * Class ComplexSignal
  */
-public class ComplexSignal {
+public class ComplexSignal implements ComplexLines {
 
 	public final static byte REAL		= (byte)0;
 	public final static byte IMAGINARY	= (byte)1;
@@ -192,6 +194,36 @@ public class ComplexSignal {
 		}
 	}
 
+	/**
+	* Complex multiply-accumulate in place, this += a*b.
+	*/
+	public void multiplyAdd(ComplexSignal a, ComplexSignal b) {
+		int nxy = nx*ny;
+		for(int k=0; k<nxy; k++) {
+			real[k] += a.real[k]*b.real[k] - a.imag[k]*b.imag[k];
+			imag[k] += a.real[k]*b.imag[k] + a.imag[k]*b.real[k];
+		}
+	}
+
+	/**
+	* Complex multiply-accumulate by the conjugate in place, this += a*conj(b).
+	*/
+	public void multiplyConjugateAdd(ComplexSignal a, ComplexSignal b) {
+		int nxy = nx*ny;
+		for(int k=0; k<nxy; k++) {
+			real[k] += a.real[k]*b.real[k] + a.imag[k]*b.imag[k];
+			imag[k] += a.imag[k]*b.real[k] - a.real[k]*b.imag[k];
+		}
+	}
+
+	/**
+	* Sets to zero.
+	*/
+	public void clear() {
+		Arrays.fill(real, 0.0);
+		Arrays.fill(imag, 0.0);
+	}
+
 	/**
 	* Complex subtract operator.
 	*/
@@ -252,5 +284,51 @@ public class ComplexSignal {
 		return out;
 	}
 		
+	/**
+	*/
+	public int getWidth() {
+		return nx;
+	}
+
+	/**
+	*/
+	public int getHeight() {
+		return ny;
+	}
+
+	/**
+	*/
+	public void getRow(int y, double re[], double im[]) {
+		System.arraycopy(real, y*nx, re, 0, nx);
+		System.arraycopy(imag, y*nx, im, 0, nx);
+	}
+
+	/**
+	*/
+	public void putRow(int y, double re[], double im[]) {
+		System.arraycopy(re, 0, real, y*nx, nx);
+		System.arraycopy(im, 0, imag, y*nx, nx);
+	}
+
+	/**
+	*/
+	public void getColumns(int x, int count, double re[][], double im[][]) {
+		for(int y=0, k=x; y<ny; y++, k+=nx)
+		for(int j=0; j<count; j++) {
+			re[j][y] = real[k+j];
+			im[j][y] = imag[k+j];
+		}
+	}
+
+	/**
+	*/
+	public void putColumns(int x, int count, double re[][], double im[][]) {
+		for(int y=0, k=x; y<ny; y++, k+=nx)
+		for(int j=0; j<count; j++) {
+			real[k+j] = re[j][y];
+			imag[k+j] = im[j][y];
+		}
+	}
+
 }
 
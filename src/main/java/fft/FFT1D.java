@@ -39,46 +39,56 @@
 //==============================================================================
 package fft;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
 * FFT 1D
 */
 
 public class FFT1D {
 
+	private static final ThreadLocal<Map<Integer, FFT1D>> locals = new ThreadLocal<Map<Integer, FFT1D>>() {
+		protected Map<Integer, FFT1D> initialValue() {
+			return new HashMap<Integer, FFT1D>();
+		}
+	};
+
+	/** Radix-4 stages shorter than this loop over the blocks for each twiddle */
+	private static final int RADIX4_SHORT = 4;
+
 	private boolean radix2 = true;
-	private double Rearg[];
-	private double Imarg[];
 	private double[] yReOut;
 	private double[] yImOut;
+	private FFTPlan plan;
+	private FFT1D chirpFFT;
+	private double[] chirpRe;
+	private double[] chirpIm;
 	 
+	/**
+	* Builds a FFT of a given size on the cached plan of this size.
+	*/
 	public FFT1D(int size) {
-	
-		int m = 1;
-		int size1 = size;
-		double fact;
-		double arg;
-		while ( size1 > 2) {
-			size1 /= 2;
-			m++;
-		}
-	
-		if ((int)Math.round(Math.pow(2,m)) == size) {
-			radix2=true;
-			n=1<<m;
-			fact= 2.0*Math.PI/(double)n;
-			Imarg = new double[n];
-			Rearg = new double[n];
-			// compute W coefficients
-			for (int i=0;i<n;i++) {
-				arg = fact*(double)i;
-				Rearg[i] = Math.cos(arg);
-				Imarg[i] = -Math.sin(arg);
-			}	
+		this(FFTPlan.get(size));
+	}
+
+	/**
+	* Builds a FFT on a plan, the tables of the plan are shared and the 
+	* scratch arrays belong to this object. A FFT1D should be used by a 
+	* single thread at a time, see get().
+	*/
+	public FFT1D(FFTPlan plan) {
+		this.plan = plan;
+		n = plan.size;
+		radix2 = plan.radix2;
+		if (plan.bluestein) {
+			chirpFFT = new FFT1D(FFTPlan.get(plan.chirpSize));
+			chirpRe = new double[plan.chirpSize];
+			chirpIm = new double[plan.chirpSize];
 		}
-		else {
-			radix2=false;
-			maxPrimeFactor = /*65537; */ (int)((double)(size+1));
-			maxPrimeFactorDiv2 =(maxPrimeFactor+1)/2;// (int)((double)(maxPrimeFactor+1)/2);
+		else if (!radix2) {
+			maxPrimeFactor = plan.maxPrimeFactor;
+			maxPrimeFactorDiv2 =(maxPrimeFactor+1)/2;
 
 			twiddleRe = new double[maxPrimeFactor];
 			twiddleIm = new double[maxPrimeFactor];
@@ -90,16 +100,27 @@ public class FFT1D {
 			vIm = new double[maxPrimeFactorDiv2];
 			wRe = new double[maxPrimeFactorDiv2];
 			wIm = new double[maxPrimeFactorDiv2];
-			yReOut = new double[size];
-			yImOut = new double[size];
-			//Math.pi = 4*Math.atan(1);    
-			n = size;
-			sofarRadix = new int[maxFactorCount]; 
-			actualRadix = new int[maxFactorCount];
-			remainRadix = new int[maxFactorCount];
-			transTableSetup(sofarRadix, actualRadix, remainRadix);
+			yReOut = new double[n];
+			yImOut = new double[n];
+			sofarRadix = plan.sofarRadix;
+			actualRadix = plan.actualRadix;
+			remainRadix = plan.remainRadix;
+			nFactor = plan.getFactorCount();
 		}
+	}
 
+	/**
+	* Returns the FFT of a given size owned by the calling thread, it is 
+	* built once per thread and per size.
+	*/
+	public static FFT1D get(int size) {
+		Map<Integer, FFT1D> ffts = locals.get();
+		FFT1D fft = ffts.get(size);
+		if (fft == null) {
+			fft = new FFT1D(FFTPlan.get(size));
+			ffts.put(size, fft);
+		}
+		return fft;
 	}
 
 	/**
@@ -112,7 +133,10 @@ public class FFT1D {
 	*/
 	public void transform(double Re[], double Im[], int size, int shift) {
 		n = size;
-		if (radix2) {
+		if (plan.bluestein) {
+			doFFT_Bluestein(Re, Im, size, shift);
+		}
+		else if (radix2) {
 			doFFT1D_CooleyTukey(Re,Im,size,shift);
 		}
 		else {
@@ -133,7 +157,10 @@ public class FFT1D {
 	*/
 	public void inverse(double Re[], double Im[], int size, int shift) {
 		n = size;
-		if (radix2) {
+		if (plan.bluestein) {
+			doIFFT_Bluestein(Re, Im, size, shift);
+		}
+		else if (radix2) {
 			doIFFT1D_CooleyTukey(Re,Im,size,shift);
 		}
 		else {
@@ -150,6 +177,12 @@ public class FFT1D {
 	* There are two algorithms, the first for power of two length is a Cooley-Tukey 
 	* algorithm, the second for all size has been downloaded from the Web (Mixfft.java).
 	* These are used to transform rows or columns in the wavelet transform.
+	* 
+	* The power of two algorithm is decimated in time: the samples are put in 
+	* bit-reversed order by the table of the plan, then the stages combine 
+	* four DFTs of length q into one of length 4q, after one radix-2 stage if 
+	* the size is an odd power of two. The twiddle factors of every stage are 
+	* read in sequence from the table of the plan.
 	*
 	* @param	Re		real part of the input signal
 	* @param	Im		imaginary part of the input signal
@@ -157,56 +190,88 @@ public class FFT1D {
 	* @param	shift	set the start of the FFT
 	*/
 	private void doFFT1D_CooleyTukey(double Re[], double Im[], int size, int shift) {
-		
-		int m = 1;
-		int size1 = size;
-		while ( size1 > 2) {
-			size1 /= 2;
-			m++;
-		}
-
-		double	Retmp, Imtmp;
-		int i, j, k, stepsize, shifter;
-		int i_j, i_j_s;
-			
-		// bit inversion	
-		for (i=j=shift;i<shift+n-1;i++) {
-			if (i<j) {
-				Retmp=Re[i]; Imtmp=Im[i];
-				Re[i]=Re[j]; Im[i]=Im[j];
-				Re[j]=Retmp; Im[j]=Imtmp;
+		int rev[] = plan.bitReverse;
+		double tw[] = plan.twiddles;
+
+		// bit inversion
+		for (int i=0; i<size; i++) {
+			int j = rev[i];
+			if (i < j) {
+				double tmp = Re[i+shift]; Re[i+shift] = Re[j+shift]; Re[j+shift] = tmp;
+				tmp = Im[i+shift]; Im[i+shift] = Im[j+shift]; Im[j+shift] = tmp;
 			}
-			k=n>>1;
-			while (k+shift<=j) {
-				j-=k;
-				k/=2;
+		}
+
+		int q = 1;
+		if (plan.log2 % 2 == 1) {
+			for (int i=shift; i<shift+size; i+=2) {
+				double re = Re[i+1];
+				double im = Im[i+1];
+				Re[i+1] = Re[i] - re;
+				Im[i+1] = Im[i] - im;
+				Re[i] += re;
+				Im[i] += im;
 			}
-			j+=k;
-		}
-
-		// Perform the FFT
-		for(stepsize=1,shifter=m-1;stepsize<n;stepsize<<=1,--shifter) {
-			for(j=shift;j<shift+n;j+=stepsize<<1) {
-				for (i=0;i<stepsize;i++) {
-					i_j=i+j;
-					i_j_s=i_j+stepsize;
-					if(i>0) {
-						Retmp = Rearg[i<<shifter]*Re[i_j_s]-Imarg[i<<shifter]*Im[i_j_s];
-						Im[i_j_s] = Rearg[i<<shifter]*Im[i_j_s]+Imarg[i<<shifter]*Re[i_j_s];
-						Re[i_j_s] = Retmp;
-					}
-					Retmp = Re[i_j] - Re[i_j_s];
-					Imtmp = Im[i_j] - Im[i_j_s];
-					Re[i_j] += Re[i_j_s];
-					Im[i_j] += Im[i_j_s];
-					Re[i_j_s] = Retmp;
-					Im[i_j_s] = Imtmp;
-				}
-		
+			q = 2;
+		}
+
+		// radix-4 stages, the blocks of length q at j, j+q, j+2q, j+3q 
+		// are the DFTs of the samples 0, 2, 1, 3 modulo 4. The short stages 
+		// keep the twiddles of k for all the blocks, the long stages run 
+		// through each block in sequence.
+		int offset = 0;
+		for (; 4*q<=size; q*=4) {
+			if (q < RADIX4_SHORT) {
+				for (int k=0, t=offset; k<q; k++, t+=6)
+					for (int j=shift+k; j<shift+size; j+=4*q)
+						radix4(Re, Im, j, q, k, tw, t);
 			}
+			else {
+				for (int j=shift; j<shift+size; j+=4*q)
+					for (int k=0, t=offset; k<q; k++, t+=6)
+						radix4(Re, Im, j+k, q, k, tw, t);
+			}
+			offset += 6*q;
 		}
 	}
 
+	/**
+	* Radix-4 butterfly of the samples i, i+q, i+2q, i+3q, the three last 
+	* multiplied by the twiddles w^k, w^2k, w^3k at tw[t].
+	*/
+	private static void radix4(double Re[], double Im[], int i, int q, int k, double tw[], int t) {
+		int i2 = i + q;
+		int i1 = i2 + q;
+		int i3 = i1 + q;
+		double r0 = Re[i], m0 = Im[i];
+		double r1 = Re[i1], m1 = Im[i1];
+		double r2 = Re[i2], m2 = Im[i2];
+		double r3 = Re[i3], m3 = Im[i3];
+		if (k > 0) {
+			double tmp = r1*tw[t] - m1*tw[t+1];
+			m1 = r1*tw[t+1] + m1*tw[t];
+			r1 = tmp;
+			tmp = r2*tw[t+2] - m2*tw[t+3];
+			m2 = r2*tw[t+3] + m2*tw[t+2];
+			r2 = tmp;
+			tmp = r3*tw[t+4] - m3*tw[t+5];
+			m3 = r3*tw[t+5] + m3*tw[t+4];
+			r3 = tmp;
+		}
+		double ar = r0 + r2, ai = m0 + m2;
+		double br = r0 - r2, bi = m0 - m2;
+		double cr = r1 + r3, ci = m1 + m3;
+		double dr = r1 - r3, di = m1 - m3;
+		Re[i] = ar + cr;
+		Im[i] = ai + ci;
+		Re[i2] = br + di;
+		Im[i2] = bi - dr;
+		Re[i1] = ar - cr;
+		Im[i1] = ai - ci;
+		Re[i3] = br - di;
+		Im[i3] = bi + dr;
+	}
+
 	/**
 	* Perform the IFFT1D.
 	*
@@ -230,6 +295,60 @@ public class FFT1D {
 		}
 	}
 
+	/**
+	* Perform the FFT1D by the Bluestein chirp-z algorithm.
+	*
+	* X[k] = w[k] * sum_j (x[j] w[j]) conj(w[k-j]) with w[k] = exp(-i*pi*k*k/n), 
+	* the sum is a circular convolution of size m computed by radix-2 FFTs 
+	* with the precomputed spectrum of the conjugate chirp.
+	*/
+	private void doFFT_Bluestein(double Re[], double Im[], int size, int shift) {
+		int m = plan.chirpSize;
+		double wRe[] = plan.chirpRe;
+		double wIm[] = plan.chirpIm;
+		for (int k=0; k<size; k++) {
+			double re = Re[k+shift];
+			double im = Im[k+shift];
+			chirpRe[k] = re*wRe[k] - im*wIm[k];
+			chirpIm[k] = re*wIm[k] + im*wRe[k];
+		}
+		for (int k=size; k<m; k++) {
+			chirpRe[k] = 0.0;
+			chirpIm[k] = 0.0;
+		}
+		chirpFFT.transform(chirpRe, chirpIm, m, 0);
+		double kRe[] = plan.kernelRe;
+		double kIm[] = plan.kernelIm;
+		for (int k=0; k<m; k++) {
+			double re = chirpRe[k];
+			double im = chirpIm[k];
+			chirpRe[k] = re*kRe[k] - im*kIm[k];
+			chirpIm[k] = re*kIm[k] + im*kRe[k];
+		}
+		chirpFFT.inverse(chirpRe, chirpIm, m, 0);
+		for (int k=0; k<size; k++) {
+			double re = chirpRe[k];
+			double im = chirpIm[k];
+			Re[k+shift] = re*wRe[k] - im*wIm[k];
+			Im[k+shift] = re*wIm[k] + im*wRe[k];
+		}
+	}
+
+	/**
+	* Perform the IFFT1D by the Bluestein chirp-z algorithm, as the 
+	* conjugate of the FFT of the conjugate.
+	*/
+	private void doIFFT_Bluestein(double Re[], double Im[], int size, int shift) {
+		for (int i=shift;i<shift+size;i++) {
+			Im[i] = -Im[i];
+		}
+		doFFT_Bluestein(Re, Im, size, shift);
+		for (int i=shift;i<shift+size;i++) {
+			Re[i] = Re[i]/size;
+			Im[i] = -Im[i]/size;
+		}
+	}
+
 	/*
 	  fft(int n, double xRe[], double xIm[], double yRe[], double yIm[])
 	 ------------------------------------------------------------------------
@@ -300,8 +419,8 @@ public class FFT1D {
 		   10000   0.7133     -278.5   
 	 ------------------------------------------------------------------------
 	  The following procedures are used :
-		  factorize       :  factor the transformation length.
-		  transTableSetup :  setup table with sofar-, actual-, and remainRadix.
+		  factorize       :  factor the transformation length (FFTPlan).
+		  transTableSetup :  setup table with sofar-, actual-, and remainRadix (FFTPlan).
 		  permute         :  permutation allows in-place calculations.
 		  twiddleTransf   :  twiddle multiplications and DFT's for one stage.
 		  initTrig        :  initialise sine/cosine table.
@@ -313,7 +432,7 @@ public class FFT1D {
 
 	private int maxPrimeFactor ;
 	private int maxPrimeFactorDiv2 ;
-	private int maxFactorCount = 20;
+	private int maxFactorCount = FFTPlan.maxFactorCount;
 
 	private int n, nFactor;
 
@@ -346,92 +465,6 @@ public class FFT1D {
 	private int[] actualRadix ;
 	private int[] remainRadix ;
 	
-	/**
-	*
-	*/
-	private void factorize(int fact[],int num)	{
-		int i,j,k;
-		int nRadix;
-		int[] radices = new int[7];
-		int[] factors = new int[maxFactorCount];
-
-		nRadix    =  6;  
-		radices[1]=  2;
-		radices[2]=  3;
-		radices[3]=  4;
-		radices[4]=  5;
-		radices[5]=  8;
-		radices[6]= 10;
-
-		if (num==1) {
-			j=1;
-			factors[1]=1;
-		}
-		else 
-			j=0;
-		i=nRadix;
-		while ((num>1) && (i>0)) {
-			if ((num % radices[i]) == 0) {
-				num=num / radices[i];
-				j=j+1;
-				factors[j]=radices[i];
-			}
-			else  i=i-1;
-		}
-		if (factors[j] == 2)   /*substitute factors 2*8 with 4*4 */
-		{   
-			i = j-1;
-			while ((i>0) && (factors[i] != 8)) i--;
-			if (i>0) {
-				factors[j] = 4;
-				factors[i] = 4;
-		  }
-		}
-		if (num>1) {
-			for (k=2; k<Math.sqrt(num)+1; k++)
-				while ((num % k) == 0) {
-					num=num / k;
-					j=j+1;
-					factors[j]=k;
-				}
-			if (num>1) {
-				j=j+1;
-				factors[j]=num;
-			}
-		}               
-		for (i=1; i<=j; i++) {
-		  fact[i] = factors[j-i+1];  
-		}
-		nFactor=j;
-	}
-
-	/**
-	* After N is factored the parameters that control the stages are generated.
-	*
-	* @param sofar		the product of the radices so far.
-	* @param actual  : the radix handled in this stage.
-	* @param remain  : the product of the remaining radices.
-	*/
-	private void transTableSetup(int sofar[], int actual[], int remain[]) {
-		int i;
-
-		factorize(actual,n);
-	   
-		if (actual[1] > maxPrimeFactor)
-		{
-			System.out.println("\nPrime factor of FFT length too large : %6d"+actual[1]);
-			System.out.println("\nPlease modify the value of maxPrimeFactor in mixfft.c");
-		}
-	   
-		remain[0]=n;
-		sofar[1]=1;
-		remain[1]=n / actual[1];
-		for (i=2; i<=nFactor; i++) {
-			sofar[i]=sofar[i-1]*actual[i-1];
-			remain[i]=remain[i-1] / actual[i];
-		}
-	}
-
 	/**
 	* The sequence y is the permuted input sequence x so that the following
 	* transformations can be performed in-place, and the final result is the
@@ -805,7 +838,6 @@ public class FFT1D {
 	   
 		//Math.pi = 4*Math.atan(1);    
 		n = size;
-		transTableSetup(sofarRadix, actualRadix, remainRadix);
 		permute(actualRadix, remainRadix, xRe, xIm, yReOut, yImOut);
 		
 		for (count=1; count<=nFactor; count++)
@@ -39,12 +39,38 @@
 //==============================================================================
 package fft;
 
+import java.util.concurrent.RecursiveAction;
+
 /**
  * FFT2D
+ * 
+ * The columns and the rows are split in ranges of lines transformed in 
+ * parallel by the fork-join pool, each thread with its own FFT1D. The 
+ * column pass gathers a block of adjacent columns at once, so that each 
+ * row is read and written contiguously. Every line goes through the same 
+ * 1D transform, the results do not depend on the number of threads.
  */
 
 public class FFT2D {
 	
+	/** Number of adjacent columns gathered for the column pass. */
+	private static final int	BLOCK		= 8;
+
+	/** Minimum number of lines processed by one task. */
+	private static final int	GRAIN		= 16;
+
+	private static final int	COLUMNS		= 0;
+	private static final int	ROWS		= 1;
+	private static final int	ROWS_REAL	= 2;
+	private static final int	ROWS_HALF	= 3;
+
+	/** Lines of scratch of each thread, reused by all the passes */
+	private static final ThreadLocal<double[][][]> scratches = new ThreadLocal<double[][][]>() {
+		protected double[][][] initialValue() {
+			return new double[2][BLOCK][0];
+		}
+	};
+
 	/**
 	* Perform the FFT 2D.
 	*/
@@ -52,36 +78,10 @@ public class FFT2D {
 		int nx = in.nx;
 		int ny = in.ny;
 		ComplexSignal fourier = new ComplexSignal(nx, ny);		// real and imag
-		double colReal[] = new double[ny];
-		double colImag[] = new double[ny];
-		FFT1D ffty = new FFT1D(ny);
-		
-		for (int x=0; x<nx; x++) {
-
-			getY(x, in.real, colReal);
-			if (in.imag == null)
-				for(int i=0; i<ny; i++) colImag[i] = 0.0;
-			else
-				getY(x, in.imag, colImag);
-			ffty.transform(colReal, colImag, ny, 0);
-			putY(x, fourier.real, colReal);
-			putY(x, fourier.imag, colImag);
-
-		}
-	
-		double rowReal[] = new double[nx];
-		double rowImag[] = new double[nx];
-		
-		FFT1D fftx = new FFT1D(nx);
-
-		for (int y=0; y<ny; y++) {
-
-			getX(y, fourier.real, rowReal);	
-			getX(y, fourier.imag, rowImag);
-			fftx.transform(rowReal, rowImag, nx, 0);
-			putX(y, fourier.real, rowReal);	
-			putX(y, fourier.imag, rowImag);
-		}
+		System.arraycopy(in.real, 0, fourier.real, 0, nx*ny);
+		if (in.imag != null)
+			System.arraycopy(in.imag, 0, fourier.imag, 0, nx*ny);
+		transformInPlace(fourier);
 		return fourier;
 	}
 
@@ -89,59 +89,286 @@ public class FFT2D {
 	* Perform the inverse FFT 2D.
 	*/
 	public static ComplexSignal inverse(ComplexSignal fourier) {
+		ComplexSignal out = fourier.duplicate();
+		inverseInPlace(out);
+		return out;
+	}
 
-		int nx = fourier.nx;
-		int ny = fourier.ny;
-		ComplexSignal out = new ComplexSignal(nx, ny);	
-		double colReal[] = new double[ny];
-		double colImag[] = new double[ny];
-
-		FFT1D ffty = new FFT1D(ny);
-		for (int x=0; x<nx; x++) {
-			getY(x, fourier.real, colReal);	
-			getY(x, fourier.imag, colImag);
-			ffty.inverse(colReal, colImag, ny, 0);
-			putY(x, out.real, colReal);	
-			putY(x, out.imag, colImag);
-		}
+	/**
+	* Perform in place the FFT 2D, without allocation.
+	*/
+	public static void transformInPlace(ComplexSignal signal) {
+		new Lines(COLUMNS, false, signal, null, signal.nx, 0, signal.nx).invoke();
+		new Lines(ROWS, false, signal, null, signal.nx, 0, signal.ny).invoke();
+	}
+
+	/**
+	* Perform in place the inverse FFT 2D, without allocation.
+	*/
+	public static void inverseInPlace(ComplexSignal signal) {
+		new Lines(COLUMNS, true, signal, null, signal.nx, 0, signal.nx).invoke();
+		new Lines(ROWS, true, signal, null, signal.nx, 0, signal.ny).invoke();
+	}
 	
-		double rowReal[] = new double[nx];
-		double rowImag[] = new double[nx];
-		FFT1D fftx = new FFT1D(nx);
-		for (int y=0; y<ny; y++) {
-			getX(y, out.real, rowReal);	
-			getX(y, out.imag, rowImag);
-			fftx.inverse(rowReal, rowImag, nx, 0);
-			putX(y, out.real, rowReal);	
-			putX(y, out.imag, rowImag);
-		}
+	/**
+	* Perform the FFT 2D of a real image of size [nx*ny].
+	* 
+	* Returns the half spectrum of size [(nx/2+1)*ny], the other half is 
+	* given by the Hermitian symmetry. The rows are transformed two by two 
+	* as the real and imaginary parts of a complex FFT.
+	*/
+	public static ComplexSignal transformReal(double in[], int nx, int ny) {
+		ComplexSignal fourier = new ComplexSignal(nx/2 + 1, ny);
+		transformReal(in, nx, ny, fourier);
+		return fourier;
+	}
+
+	/**
+	* Perform the FFT 2D of a real image of size [nx*ny] into the half 
+	* spectrum fourier of size [(nx/2+1)*ny], without allocation.
+	*/
+	public static void transformReal(double in[], int nx, int ny, ComplexSignal fourier) {
+		new Lines(ROWS_REAL, false, fourier, in, nx, 0, (ny+1)/2).invoke();
+		new Lines(COLUMNS, false, fourier, null, nx, 0, fourier.nx).invoke();
+	}
+
+	/**
+	* Perform the inverse FFT 2D of a half spectrum of size [(nx/2+1)*ny] to 
+	* a real image of size [nx*ny].
+	* 
+	* The spectrum is completed by the Hermitian symmetry, the imaginary 
+	* parts of the frequencies 0 and nx/2 along x are ignored, so the result 
+	* is the real part of the inverse of the full spectrum. The rows are 
+	* inverted two by two.
+	*/
+	public static double[] inverseReal(ComplexSignal fourier, int nx) {
+		double out[] = new double[nx*fourier.ny];
+		inverseReal(fourier.duplicate(), nx, out);
 		return out;
 	}
-	
-	
-	private static void getY(int x, double in[], double col[]) {
-		int ny = col.length;
-		int nx = in.length / ny;
-		for(int j=0, k=x; j<ny; j++, k+=nx)
-			col[j] = in[k];
+
+	/**
+	* Perform the inverse FFT 2D of a half spectrum of size [(nx/2+1)*ny] 
+	* into the real image out of size [nx*ny], without allocation. The 
+	* spectrum is used as working storage and is overwritten.
+	*/
+	public static void inverseReal(ComplexSignal fourier, int nx, double out[]) {
+		new Lines(COLUMNS, true, fourier, null, nx, 0, fourier.nx).invoke();
+		new Lines(ROWS_HALF, true, fourier, out, nx, 0, (fourier.ny+1)/2).invoke();
 	}
 
-	private static void getX(int y, double in[], double row[]) {
-		int nx = row.length;
-		System.arraycopy(in, y*nx, row, 0, nx);
+	/**
+	* Perform in place the FFT 2D of a single precision signal.
+	*/
+	public static void transformInPlace(ComplexFloatSignal signal) {
+		new Lines(COLUMNS, false, signal, null, signal.nx, 0, signal.nx).invoke();
+		new Lines(ROWS, false, signal, null, signal.nx, 0, signal.ny).invoke();
 	}
 
-	private static void putY(int x, double in[], double col[]) {
-		int ny = col.length;
-		int nx = in.length / ny;
-		for(int j=0, k=x; j<ny; j++, k+=nx)
-			in[k] = col[j];
+	/**
+	* Perform in place the inverse FFT 2D of a single precision signal.
+	*/
+	public static void inverseInPlace(ComplexFloatSignal signal) {
+		new Lines(COLUMNS, true, signal, null, signal.nx, 0, signal.nx).invoke();
+		new Lines(ROWS, true, signal, null, signal.nx, 0, signal.ny).invoke();
 	}
 
-	private static void putX(int y, double in[], double row[]) {
-		int nx = row.length;
-		System.arraycopy(row, 0, in, y*nx, nx);
+	/**
+	* Perform the FFT 2D of a real image of size [nx*ny] into the single 
+	* precision half spectrum fourier of size [(nx/2+1)*ny].
+	*/
+	public static void transformReal(double in[], int nx, int ny, ComplexFloatSignal fourier) {
+		new Lines(ROWS_REAL, false, fourier, in, nx, 0, (ny+1)/2).invoke();
+		new Lines(COLUMNS, false, fourier, null, nx, 0, fourier.nx).invoke();
+	}
+
+	/**
+	* Perform the inverse FFT 2D of a single precision half spectrum of size 
+	* [(nx/2+1)*ny] into the real image out of size [nx*ny]. The spectrum 
+	* is used as working storage and is overwritten.
+	*/
+	public static void inverseReal(ComplexFloatSignal fourier, int nx, double out[]) {
+		new Lines(COLUMNS, true, fourier, null, nx, 0, fourier.nx).invoke();
+		new Lines(ROWS_HALF, true, fourier, out, nx, 0, (fourier.ny+1)/2).invoke();
+	}
+
+	/**
+	* Returns the BLOCK real and imaginary lines of scratch of the calling 
+	* thread, of length n at least. The lines are longer than the signals 
+	* after a larger transform, the passes use only the first n samples.
+	*/
+	private static double[][][] getScratch(int n) {
+		double scratch[][][] = scratches.get();
+		if (scratch[0][0].length < n)
+			for (int j=0; j<BLOCK; j++) {
+				scratch[0][j] = new double[n];
+				scratch[1][j] = new double[n];
+			}
+		return scratch;
+	}
+
+	/**
+	* Transform in place the columns [lo, hi[ of the signal, by blocks of 
+	* adjacent columns.
+	*/
+	private static void columns(ComplexLines signal, boolean inverse, int lo, int hi) {
+		int ny = signal.getHeight();
+		double scratch[][][] = getScratch(ny);
+		double blockReal[][] = scratch[0];
+		double blockImag[][] = scratch[1];
+		FFT1D ffty = FFT1D.get(ny);
+		for (int x0=lo; x0<hi; x0+=BLOCK) {
+			int b = Math.min(BLOCK, hi-x0);
+			signal.getColumns(x0, b, blockReal, blockImag);
+			for (int j=0; j<b; j++) {
+				if (inverse)
+					ffty.inverse(blockReal[j], blockImag[j], ny, 0);
+				else
+					ffty.transform(blockReal[j], blockImag[j], ny, 0);
+			}
+			signal.putColumns(x0, b, blockReal, blockImag);
+		}
+	}
+
+	/**
+	* Transform in place the rows [lo, hi[ of the signal.
+	*/
+	private static void rows(ComplexLines signal, boolean inverse, int lo, int hi) {
+		int nx = signal.getWidth();
+		double scratch[][][] = getScratch(nx);
+		double rowReal[] = scratch[0][0];
+		double rowImag[] = scratch[1][0];
+		FFT1D fftx = FFT1D.get(nx);
+		for (int y=lo; y<hi; y++) {
+			signal.getRow(y, rowReal, rowImag);
+			if (inverse)
+				fftx.inverse(rowReal, rowImag, nx, 0);
+			else
+				fftx.transform(rowReal, rowImag, nx, 0);
+			signal.putRow(y, rowReal, rowImag);
+		}
+	}
+
+	/**
+	* Transform the pairs of real rows [2*lo, 2*hi[ of in into the half 
+	* spectrum rows of fourier.
+	*/
+	private static void rowsReal(double in[], ComplexLines fourier, int nx, int lo, int hi) {
+		int hx = fourier.getWidth();
+		int ny = fourier.getHeight();
+		double scratch[][][] = getScratch(nx);
+		double rowReal[] = scratch[0][0];
+		double rowImag[] = scratch[1][0];
+		double aReal[] = scratch[0][1];
+		double aImag[] = scratch[1][1];
+		double bReal[] = scratch[0][2];
+		double bImag[] = scratch[1][2];
+		FFT1D fftx = FFT1D.get(nx);
+		for (int y=2*lo; y<2*hi && y<ny; y+=2) {
+			boolean pair = y+1 < ny;
+			System.arraycopy(in, y*nx, rowReal, 0, nx);
+			if (pair)
+				System.arraycopy(in, (y+1)*nx, rowImag, 0, nx);
+			else
+				for(int i=0; i<nx; i++) rowImag[i] = 0.0;
+			fftx.transform(rowReal, rowImag, nx, 0);
+			for (int u=0; u<hx; u++) {
+				int m = (nx - u) % nx;
+				aReal[u] = 0.5 * (rowReal[u] + rowReal[m]);
+				aImag[u] = 0.5 * (rowImag[u] - rowImag[m]);
+				bReal[u] = 0.5 * (rowImag[u] + rowImag[m]);
+				bImag[u] = 0.5 * (rowReal[m] - rowReal[u]);
+			}
+			fourier.putRow(y, aReal, aImag);
+			if (pair)
+				fourier.putRow(y+1, bReal, bImag);
+		}
+	}
+
+	/**
+	* Invert the pairs of half spectrum rows [2*lo, 2*hi[ of half into the 
+	* real rows of out.
+	*/
+	private static void rowsHalf(ComplexLines half, double out[], int nx, int lo, int hi) {
+		int hx = half.getWidth();
+		int ny = half.getHeight();
+		double scratch[][][] = getScratch(nx);
+		double rowReal[] = scratch[0][0];
+		double rowImag[] = scratch[1][0];
+		double aReal[] = scratch[0][1];
+		double aImag[] = scratch[1][1];
+		double bReal[] = scratch[0][2];
+		double bImag[] = scratch[1][2];
+		FFT1D fftx = FFT1D.get(nx);
+		for (int y=2*lo; y<2*hi && y<ny; y+=2) {
+			boolean pair = y+1 < ny;
+			half.getRow(y, aReal, aImag);
+			if (pair)
+				half.getRow(y+1, bReal, bImag);
+			// Z = A + i B, A and B the Hermitian spectra of the rows y and y+1
+			for (int u=0; u<nx; u++) {
+				boolean upper = u >= hx;
+				int k = (upper ? nx - u : u);
+				boolean real = (u == 0 || 2*u == nx);
+				double ar = aReal[k];
+				double ai = (real ? 0.0 : (upper ? -aImag[k] : aImag[k]));
+				double br = (pair ? bReal[k] : 0.0);
+				double bi = (pair && !real ? (upper ? -bImag[k] : bImag[k]) : 0.0);
+				rowReal[u] = ar - bi;
+				rowImag[u] = ai + br;
+			}
+			fftx.inverse(rowReal, rowImag, nx, 0);
+			System.arraycopy(rowReal, 0, out, y*nx, nx);
+			if (pair)
+				System.arraycopy(rowImag, 0, out, (y+1)*nx, nx);
+		}
+	}
+
+	/**
+	* Recursive task splitting a range of lines (columns, rows or pairs of 
+	* rows) until the grain size.
+	*/
+	private static class Lines extends RecursiveAction {
+
+		private static final long	serialVersionUID	= 1L;
+		private int					pass;
+		private boolean				inverse;
+		private ComplexLines		signal;
+		private double				real[];
+		private int					nx;
+		private int					lo;
+		private int					hi;
+
+		public Lines(int pass, boolean inverse, ComplexLines signal, double real[], int nx, int lo, int hi) {
+			this.pass = pass;
+			this.inverse = inverse;
+			this.signal = signal;
+			this.real = real;
+			this.nx = nx;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo <= GRAIN) {
+				process();
+				return;
+			}
+			int mid = (lo + hi) >>> 1;
+			invokeAll(new Lines(pass, inverse, signal, real, nx, lo, mid), new Lines(pass, inverse, signal, real, nx, mid, hi));
+		}
+
+		private void process() {
+			if (pass == COLUMNS)
+				columns(signal, inverse, lo, hi);
+			else if (pass == ROWS)
+				rows(signal, inverse, lo, hi);
+			else if (pass == ROWS_REAL)
+				rowsReal(real, signal, nx, lo, hi);
+			else
+				rowsHalf(signal, real, nx, lo, hi);
+		}
 	}
-	
 
-}
\ No newline at end of file
+}
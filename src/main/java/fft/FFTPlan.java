@@ -0,0 +1,337 @@
+//==============================================================================
+//
+// Project: Directional Image Analysis - OrientationJ plugin
+// 
+// Author: Daniel Sage
+// 
+// Organization: Biomedical Imaging Group (BIG)
+// Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+//
+// Information: 
+// OrientationJ: http://bigwww.epfl.ch/demo/orientation/
+// MonogenicJ: http://bigwww.epfl.ch/demo/monogenic/
+//  
+//
+// Reference on methods and plugin
+// Z. Püspöki, M. Storath, D. Sage, M. Unser
+// "Transforms and Operators for Directional Bioimage Analysis: A Survey," 
+// Advances in Anatomy, Embryology and Cell Biology, vol. 219, Focus on Bio-Image Informatics, 
+// Springer International Publishing, ch. 3, pp. 69-93, May 21, 2016.
+//
+// Reference on applications
+// E. Fonck, G.G. Feigl, J. Fasel, D. Sage, M. Unser, D.A. Ruefenacht, N. Stergiopulos 
+// "Effect of Aging on Elastin Functionality in Human Cerebral Arteries,"
+// Stroke, vol. 40, no. 7, pp. 2552-2556, July 2009.
+//
+// R. Rezakhaniha, A. Agianniotis, J.T.C. Schrauwen, A. Griffa, D. Sage, C.V.C. Bouten, F.N. van de Vosse, M. Unser, N. Stergiopulos
+// "Experimental Investigation of Collagen Waviness and Orientation in the Arterial Adventitia Using Confocal Laser Scanning Microscopy,"
+// Biomechanics and Modeling in Mechanobiology, vol. 11, no. 3-4, pp. 461-473, 2012.
+
+// Conditions of use: You'll be free to use this software for research purposes,
+// but you should not redistribute it without our consent. In addition, we 
+// expect you to include a citation or acknowledgment whenever you present or 
+// publish results that are based on it.
+//
+// History:
+// - Updated (Daniel Sage, 24 January 2011)
+// - Added the Vector field (Daniel Sage, 1 March 2017)
+//
+//==============================================================================
+
+package fft;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable plan of a 1D FFT of a given size.
+ * 
+ * A plan holds the tables computed once per size: the bit-reversal 
+ * permutation and the twiddle factors of each stage of the power-of-two 
+ * algorithm, or the factorization of the size for the mixed-radix 
+ * algorithm. The plans are cached by size and shared by the threads, each 
+ * FFT1D built on a plan has its own scratch arrays.
+ * 
+ * The mixed-radix algorithm is quadratic in the large prime factors of the 
+ * size. When its estimated cost is higher, the plan uses the Bluestein 
+ * chirp-z algorithm instead: the DFT of size n is a circular convolution 
+ * computed by radix-2 FFTs of size m >= 2n-1, in O(n log n) for any n.
+ */
+public class FFTPlan {
+
+	/** Maximum number of factors of a size */
+	static final int maxFactorCount = 20;
+
+	/** Cost per sample of a stage of radix 2, 3, 4, 5, 8 or 10 */
+	private static final double COST_FAST_RADIX = 6.0;
+
+	/** Cost per sample and per stage of the Bluestein convolution */
+	private static final double COST_BLUESTEIN = 12.0;
+
+	/** Maximum number of plans kept in the cache */
+	private static final int CACHE_SIZE = 64;
+
+	private static final Map<Integer, FFTPlan> cache = new LinkedHashMap<Integer, FFTPlan>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		protected boolean removeEldestEntry(Map.Entry<Integer, FFTPlan> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
+	final int size;
+	final boolean radix2;
+	final int log2;
+	final int bitReverse[];
+	final double twiddles[];
+	final int sofarRadix[];
+	final int actualRadix[];
+	final int remainRadix[];
+	final int maxPrimeFactor;
+	final boolean bluestein;
+	final int chirpSize;
+	final double chirpRe[];
+	final double chirpIm[];
+	final double kernelRe[];
+	final double kernelIm[];
+	private int nFactor;
+
+	/**
+	 * Returns the plan of a size, it is created at the first request.
+	 */
+	public static FFTPlan get(int size) {
+		synchronized(cache) {
+			FFTPlan plan = cache.get(size);
+			if (plan == null) {
+				plan = new FFTPlan(size);
+				cache.put(size, plan);
+			}
+			return plan;
+		}
+	}
+
+	private FFTPlan(int size) {
+		this.size = size;
+		int m = 1;
+		int size1 = size;
+		while ( size1 > 2) {
+			size1 /= 2;
+			m++;
+		}
+		radix2 = ((int)Math.round(Math.pow(2,m)) == size);
+		if (radix2) {
+			int n = 1<<m;
+			log2 = m;
+			bitReverse = new int[n];
+			for (int i=1; i<n; i++)
+				bitReverse[i] = (bitReverse[i>>1] >> 1) | ((i & 1) << (m-1));
+			// w^k, w^2k, w^3k of each radix-4 stage of quarter length q, w = exp(-2i*pi/(4q))
+			twiddles = new double[2*n];
+			int offset = 0;
+			for (int q=(m % 2 == 1 ? 2 : 1); 4*q<=n; q*=4) {
+				double fact = 2.0*Math.PI/(4.0*q);
+				for (int k=0; k<q; k++)
+				for (int r=1; r<=3; r++) {
+					twiddles[offset++] = Math.cos(fact*r*k);
+					twiddles[offset++] = -Math.sin(fact*r*k);
+				}
+			}
+			sofarRadix = null;
+			actualRadix = null;
+			remainRadix = null;
+			maxPrimeFactor = 0;
+			bluestein = false;
+		}
+		else {
+			log2 = 0;
+			bitReverse = null;
+			twiddles = null;
+			sofarRadix = new int[maxFactorCount];
+			actualRadix = new int[maxFactorCount];
+			remainRadix = new int[maxFactorCount];
+			transTableSetup(sofarRadix, actualRadix, remainRadix);
+			// The short DFTs use up to 10 samples
+			int largest = 10;
+			for (int i=1; i<=nFactor; i++)
+				largest = Math.max(largest, actualRadix[i]);
+			maxPrimeFactor = largest + 1;
+			bluestein = (size > 2 && getMixedCost() > getBluesteinCost(getChirpSize(size)));
+		}
+		if (bluestein) {
+			chirpSize = getChirpSize(size);
+			chirpRe = new double[size];
+			chirpIm = new double[size];
+			kernelRe = new double[chirpSize];
+			kernelIm = new double[chirpSize];
+			// w[k] = exp(-i*pi*k*k/n), k*k is reduced modulo 2n to keep the accuracy
+			for (int k=0; k<size; k++) {
+				double arg = Math.PI * (double)(((long)k*k) % (2L*size)) / size;
+				chirpRe[k] = Math.cos(arg);
+				chirpIm[k] = -Math.sin(arg);
+			}
+			// spectrum of the conjugate chirp, wrapped around
+			kernelRe[0] = 1.0;
+			for (int k=1; k<size; k++) {
+				kernelRe[k] = kernelRe[chirpSize-k] = chirpRe[k];
+				kernelIm[k] = kernelIm[chirpSize-k] = -chirpIm[k];
+			}
+			new FFT1D(get(chirpSize)).transform(kernelRe, kernelIm, chirpSize, 0);
+		}
+		else {
+			chirpSize = 0;
+			chirpRe = null;
+			chirpIm = null;
+			kernelRe = null;
+			kernelIm = null;
+		}
+	}
+
+	/**
+	 * Returns the smallest size 2^a*3^b*5^c*7^d larger than or equal to n, 
+	 * a fast size of the mixed-radix algorithm.
+	 */
+	public static int getSmoothSize(int n) {
+		int m = Math.max(1, n);
+		while (true) {
+			int r = m;
+			for (int p=2; p<=7; p++)
+				while (r % p == 0)
+					r /= p;
+			if (r == 1)
+				return m;
+			m++;
+		}
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns true if the plan uses the Bluestein algorithm.
+	 */
+	public boolean isBluestein() {
+		return bluestein;
+	}
+
+	/**
+	 * Estimated cost of the mixed-radix algorithm, in units of a complex 
+	 * multiply-add. The butterflies of the radices 2, 3, 4, 5, 8 and 10 are 
+	 * optimized, the other radices p cost p per sample.
+	 */
+	private double getMixedCost() {
+		double cost = 0;
+		for (int i=1; i<=nFactor; i++) {
+			int p = actualRadix[i];
+			boolean fast = (p == 2 || p == 3 || p == 4 || p == 5 || p == 8 || p == 10);
+			cost += size * (fast ? COST_FAST_RADIX : p);
+		}
+		return cost;
+	}
+
+	/**
+	 * Estimated cost of the Bluestein algorithm, dominated by the two 
+	 * radix-2 FFTs of size m.
+	 */
+	private static double getBluesteinCost(int m) {
+		double log2 = Math.log(m) / Math.log(2);
+		return COST_BLUESTEIN * m * log2;
+	}
+
+	/**
+	 * Returns the power of two of the Bluestein convolution, at least 2n-1.
+	 */
+	private static int getChirpSize(int n) {
+		int m = 1;
+		while (m < 2*n-1)
+			m *= 2;
+		return m;
+	}
+
+	/**
+	 * Returns the number of factors of the mixed-radix algorithm.
+	 */
+	int getFactorCount() {
+		return nFactor;
+	}
+
+	/**
+	*
+	*/
+	private void factorize(int fact[],int num)	{
+		int i,j,k;
+		int nRadix;
+		int[] radices = new int[7];
+		int[] factors = new int[maxFactorCount];
+
+		nRadix    =  6;  
+		radices[1]=  2;
+		radices[2]=  3;
+		radices[3]=  4;
+		radices[4]=  5;
+		radices[5]=  8;
+		radices[6]= 10;
+
+		if (num==1) {
+			j=1;
+			factors[1]=1;
+		}
+		else 
+			j=0;
+		i=nRadix;
+		while ((num>1) && (i>0)) {
+			if ((num % radices[i]) == 0) {
+				num=num / radices[i];
+				j=j+1;
+				factors[j]=radices[i];
+			}
+			else  i=i-1;
+		}
+		if (factors[j] == 2)   /*substitute factors 2*8 with 4*4 */
+		{   
+			i = j-1;
+			while ((i>0) && (factors[i] != 8)) i--;
+			if (i>0) {
+				factors[j] = 4;
+				factors[i] = 4;
+		  }
+		}
+		if (num>1) {
+			for (k=2; k<Math.sqrt(num)+1; k++)
+				while ((num % k) == 0) {
+					num=num / k;
+					j=j+1;
+					factors[j]=k;
+				}
+			if (num>1) {
+				j=j+1;
+				factors[j]=num;
+			}
+		}               
+		for (i=1; i<=j; i++) {
+		  fact[i] = factors[j-i+1];  
+		}
+		nFactor=j;
+	}
+
+	/**
+	* After N is factored the parameters that control the stages are generated.
+	*
+	* @param sofar		the product of the radices so far.
+	* @param actual  : the radix handled in this stage.
+	* @param remain  : the product of the remaining radices.
+	*/
+	private void transTableSetup(int sofar[], int actual[], int remain[]) {
+		int n = size;
+		int i;
+
+		factorize(actual,n);
+	   
+		remain[0]=n;
+		sofar[1]=1;
+		remain[1]=n / actual[1];
+		for (i=2; i<=nFactor; i++) {
+			sofar[i]=sofar[i-1]*actual[i-1];
+			remain[i]=remain[i-1] / actual[i];
+		}
+	}
+}
@@ -0,0 +1,180 @@
+//==============================================================================
+//
+// Project: Directional Image Analysis - OrientationJ plugin
+// 
+// Author: Daniel Sage
+// 
+// Organization: Biomedical Imaging Group (BIG)
+// Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+//
+// Information: 
+// OrientationJ: http://bigwww.epfl.ch/demo/orientation/
+// MonogenicJ: http://bigwww.epfl.ch/demo/monogenic/
+//  
+//
+// Reference on methods and plugin
+// Z. Püspöki, M. Storath, D. Sage, M. Unser
+// "Transforms and Operators for Directional Bioimage Analysis: A Survey," 
+// Advances in Anatomy, Embryology and Cell Biology, vol. 219, Focus on Bio-Image Informatics, 
+// Springer International Publishing, ch. 3, pp. 69-93, May 21, 2016.
+//
+// Reference on applications
+// E. Fonck, G.G. Feigl, J. Fasel, D. Sage, M. Unser, D.A. Ruefenacht, N. Stergiopulos 
+// "Effect of Aging on Elastin Functionality in Human Cerebral Arteries,"
+// Stroke, vol. 40, no. 7, pp. 2552-2556, July 2009.
+//
+// R. Rezakhaniha, A. Agianniotis, J.T.C. Schrauwen, A. Griffa, D. Sage, C.V.C. Bouten, F.N. van de Vosse, M. Unser, N. Stergiopulos
+// "Experimental Investigation of Collagen Waviness and Orientation in the Arterial Adventitia Using Confocal Laser Scanning Microscopy,"
+// Biomechanics and Modeling in Mechanobiology, vol. 11, no. 3-4, pp. 461-473, 2012.
+
+// Conditions of use: You'll be free to use this software for research purposes,
+// but you should not redistribute it without our consent. In addition, we 
+// expect you to include a citation or acknowledgment whenever you present or 
+// publish results that are based on it.
+//
+// History:
+// - Updated (Daniel Sage, 24 January 2011)
+// - Added the Vector field (Daniel Sage, 1 March 2017)
+//
+//==============================================================================
+
+package fft;
+
+/**
+ * Bank of filters applied in the Fourier domain to the real frames of a 
+ * stack.
+ * 
+ * The filters are stored once as half spectra of size [(nx/2+1)*ny] and are 
+ * shared by all the frames. The spectra are single precision signals, the 
+ * products are done in place. The bank is not modified after its creation, 
+ * several frames can be filtered at the same time by different threads, 
+ * the inverse transforms of a frame overlapping the forward transform of 
+ * the next one. All the transforms of the bank use the same FFT plans.
+ * 
+ * Each thread filters its frames in its own Workspace, a fixed set of 
+ * buffers: the transforms and the products are done in place and no 
+ * garbage is created per frame.
+ */
+public class FilterBank {
+
+	private int nx;
+	private int ny;
+	private ComplexFloatSignal filters[];
+
+	/**
+	* Creates a bank from the half spectra [(nx/2+1)*ny] of Hermitian 
+	* filters.
+	*/
+	public FilterBank(int nx, int ny, ComplexSignal filters[]) {
+		this.nx = nx;
+		this.ny = ny;
+		this.filters = new ComplexFloatSignal[filters.length];
+		for(int k=0; k<filters.length; k++)
+			this.filters[k] = new ComplexFloatSignal(filters[k]);
+		FFTPlan.get(nx);
+		FFTPlan.get(ny);
+	}
+
+	/**
+	* Returns the half spectrum of the Hermitian part (H(w) + conj(H(-w)))/2 
+	* of a full filter [nx*ny]. Applied to a real signal, it gives the real 
+	* part of the inverse, also when the filter is not exactly Hermitian.
+	*/
+	public static ComplexSignal getHermitianHalf(ComplexSignal full) {
+		int nx = full.nx;
+		int ny = full.ny;
+		int hx = nx/2 + 1;
+		ComplexSignal half = new ComplexSignal(hx, ny);
+		for(int y=0; y<ny; y++)
+		for(int x=0; x<hx; x++) {
+			int f = x + y*nx;
+			int g = (nx-x) % nx + ((ny-y) % ny)*nx;
+			half.real[x + y*hx] = 0.5 * (full.real[f] + full.real[g]);
+			half.imag[x + y*hx] = 0.5 * (full.imag[f] - full.imag[g]);
+		}
+		return half;
+	}
+
+	/**
+	*/
+	public int getChannels() {
+		return filters.length;
+	}
+
+	/**
+	* Returns a new set of buffers for the frames of this bank.
+	*/
+	public Workspace createWorkspace() {
+		return new Workspace(nx, ny, filters.length);
+	}
+
+	/**
+	* Filters the real image [nx*ny] by every filter of the bank, one real 
+	* image [nx*ny] per filter.
+	*/
+	public double[][] analysis(double in[]) {
+		Workspace w = createWorkspace();
+		System.arraycopy(in, 0, w.image, 0, nx*ny);
+		analysis(w);
+		return w.channels;
+	}
+
+	/**
+	* Sums the real images [nx*ny] filtered by the conjugate of the filters, 
+	* the adjoint of the analysis.
+	*/
+	public double[] synthesis(double channels[][]) {
+		Workspace w = createWorkspace();
+		for(int k=0; k<filters.length; k++)
+			System.arraycopy(channels[k], 0, w.channels[k], 0, nx*ny);
+		synthesis(w);
+		return w.image;
+	}
+
+	/**
+	* Filters the image of the workspace into its channels, without 
+	* allocation.
+	*/
+	public void analysis(Workspace w) {
+		FFT2D.transformReal(w.image, nx, ny, w.spectrum);
+		for(int k=0; k<filters.length; k++) {
+			w.product.clear();
+			w.product.multiplyAdd(w.spectrum, filters[k]);
+			FFT2D.inverseReal(w.product, nx, w.channels[k]);
+		}
+	}
+
+	/**
+	* Sums the channels of the workspace filtered by the conjugate of the 
+	* filters into its image, without allocation.
+	*/
+	public void synthesis(Workspace w) {
+		w.product.clear();
+		for(int k=0; k<filters.length; k++) {
+			FFT2D.transformReal(w.channels[k], nx, ny, w.spectrum);
+			w.product.multiplyConjugateAdd(w.spectrum, filters[k]);
+		}
+		FFT2D.inverseReal(w.product, nx, w.image);
+	}
+
+	/**
+	* Buffers of a frame: the real image [nx*ny], one real channel [nx*ny] 
+	* per filter, and two half spectra. A workspace is used by one thread 
+	* at a time.
+	*/
+	public static class Workspace {
+
+		public final double image[];
+		public final double channels[][];
+		private final ComplexFloatSignal spectrum;
+		private final ComplexFloatSignal product;
+
+		private Workspace(int nx, int ny, int count) {
+			image = new double[nx*ny];
+			channels = new double[count][nx*ny];
+			spectrum = new ComplexFloatSignal(nx/2+1, ny);
+			product = new ComplexFloatSignal(nx/2+1, ny);
+		}
+	}
+
+}
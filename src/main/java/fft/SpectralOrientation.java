@@ -0,0 +1,195 @@
+//==============================================================================
+//
+// Project: Directional Image Analysis - OrientationJ plugin
+// 
+// Author: Daniel Sage
+// 
+// Organization: Biomedical Imaging Group (BIG)
+// Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+//
+// Information: 
+// OrientationJ: http://bigwww.epfl.ch/demo/orientation/
+// MonogenicJ: http://bigwww.epfl.ch/demo/monogenic/
+//  
+//
+// Reference on methods and plugin
+// Z. Püspöki, M. Storath, D. Sage, M. Unser
+// "Transforms and Operators for Directional Bioimage Analysis: A Survey," 
+// Advances in Anatomy, Embryology and Cell Biology, vol. 219, Focus on Bio-Image Informatics, 
+// Springer International Publishing, ch. 3, pp. 69-93, May 21, 2016.
+//
+// Reference on applications
+// E. Fonck, G.G. Feigl, J. Fasel, D. Sage, M. Unser, D.A. Ruefenacht, N. Stergiopulos 
+// "Effect of Aging on Elastin Functionality in Human Cerebral Arteries,"
+// Stroke, vol. 40, no. 7, pp. 2552-2556, July 2009.
+//
+// R. Rezakhaniha, A. Agianniotis, J.T.C. Schrauwen, A. Griffa, D. Sage, C.V.C. Bouten, F.N. van de Vosse, M. Unser, N. Stergiopulos
+// "Experimental Investigation of Collagen Waviness and Orientation in the Arterial Adventitia Using Confocal Laser Scanning Microscopy,"
+// Biomechanics and Modeling in Mechanobiology, vol. 11, no. 3-4, pp. 461-473, 2012.
+
+// Conditions of use: You'll be free to use this software for research purposes,
+// but you should not redistribute it without our consent. In addition, we 
+// expect you to include a citation or acknowledgment whenever you present or 
+// publish results that are based on it.
+//
+// History:
+// - Updated (Daniel Sage, 24 January 2011)
+// - Added the Vector field (Daniel Sage, 1 March 2017)
+//
+//==============================================================================
+
+package fft;
+
+/**
+ * Global orientation distribution of an image from its power spectrum.
+ * 
+ * An oriented structure concentrates its energy in the Fourier domain 
+ * along the direction perpendicular to it. The power spectrum of the real 
+ * image is computed on the half plane by the FFT2D, then every frequency 
+ * of the radial band [minFrequency, maxFrequency] (cycles per pixel) 
+ * gives its power to the orientation perpendicular to it, shared linearly 
+ * between the two nearest bins of one degree. The cost is O(N log N), 
+ * without gradient nor tensor smoothing.
+ * 
+ * The distribution has the layout of OrientationProcess.distribution(): 
+ * 180 bins, the bin a for the orientation a-90 degrees, which can be 
+ * written by saveDistribution(). The scale differs: this distribution is 
+ * normalized to a sum of 1, while distribution() returns unnormalized 
+ * counts weighted by the coherency. The latter must be divided by its sum 
+ * before the two files are compared. The dominant direction and the coherency are those of the 
+ * power-weighted mean of the doubled angles, with the weight f^2 of the 
+ * gradient, which is the global structure tensor of the image.
+ * 
+ * An optional Hann window removes the cross of the boundaries of the 
+ * periodic extension from the spectrum; the weighted mean is subtracted 
+ * before windowing so that the window itself leaks no energy.
+ */
+public class SpectralOrientation {
+
+	public static final int WINDOW_NONE = 0;
+	public static final int WINDOW_HANN = 1;
+
+	/** Number of bins of the distribution, one per degree */
+	public static final int BINS = 180;
+
+	private int window;
+	private double minFrequency;
+	private double maxFrequency;
+	private float distribution[];
+	private double dominant;
+	private double coherency;
+
+	/**
+	* Hann window and full band ]0, 0.5].
+	*/
+	public SpectralOrientation() {
+		this(WINDOW_HANN, 0.0, 0.5);
+	}
+
+	/**
+	* The frequencies are in cycles per pixel, DC is always excluded.
+	*/
+	public SpectralOrientation(int window, double minFrequency, double maxFrequency) {
+		this.window = window;
+		this.minFrequency = minFrequency;
+		this.maxFrequency = maxFrequency;
+	}
+
+	/**
+	* Computes the distribution of the image [nx*ny] and returns it.
+	*/
+	public float[] run(double image[], int nx, int ny) {
+		double in[] = new double[nx*ny];
+		double wx[] = getWindow(nx);
+		double wy[] = getWindow(ny);
+		double sum = 0.0;
+		double sumw = 0.0;
+		for (int y=0; y<ny; y++)
+		for (int x=0; x<nx; x++) {
+			sum += wx[x] * wy[y] * image[x+y*nx];
+			sumw += wx[x] * wy[y];
+		}
+		double mean = (sumw > 0 ? sum / sumw : 0.0);
+		for (int y=0; y<ny; y++)
+		for (int x=0; x<nx; x++)
+			in[x+y*nx] = wx[x] * wy[y] * (image[x+y*nx] - mean);
+
+		int hx = nx/2 + 1;
+		ComplexFloatSignal spectrum = new ComplexFloatSignal(hx, ny);
+		FFT2D.transformReal(in, nx, ny, spectrum);
+
+		double histo[] = new double[BINS];
+		double total = 0.0;
+		double c2 = 0.0;
+		double s2 = 0.0;
+		double w2 = 0.0;
+		double fmin2 = minFrequency * minFrequency;
+		double fmax2 = maxFrequency * maxFrequency;
+		float data[] = spectrum.data;
+		for (int v=0; v<ny; v++) {
+			double fy = (2*v < ny ? v : v-ny) / (double)ny;
+			for (int u=0; u<hx; u++) {
+				double fx = u / (double)nx;
+				double f2 = fx*fx + fy*fy;
+				if (f2 == 0.0 || f2 < fmin2 || f2 > fmax2)
+					continue;
+				int k = 2*(u + v*hx);
+				// the columns 0 and nx/2 have no symmetric in the half plane
+				double power = (u == 0 || 2*u == nx ? 1.0 : 2.0) * 
+						((double)data[k]*data[k] + (double)data[k+1]*data[k+1]);
+				// orientation of the structures, perpendicular to (fx, fy), y down
+				double theta = Math.atan2(fx, fy);
+				if (theta >= 0.5*Math.PI)
+					theta -= Math.PI;
+				if (theta < -0.5*Math.PI)
+					theta += Math.PI;
+				double ori = 90.0 + Math.toDegrees(theta);
+				int a = (int)Math.floor(ori);
+				double da = ori - a;
+				histo[a % BINS] += (1.0 - da) * power;
+				histo[(a+1) % BINS] += da * power;
+				total += power;
+				c2 += f2 * power * Math.cos(2.0*theta);
+				s2 += f2 * power * Math.sin(2.0*theta);
+				w2 += f2 * power;
+			}
+		}
+		distribution = new float[BINS];
+		for (int a=0; a<BINS; a++)
+			distribution[a] = (float)(total > 0 ? histo[a] / total : 0.0);
+		dominant = Math.toDegrees(0.5 * Math.atan2(s2, c2));
+		coherency = (w2 > 0 ? Math.sqrt(c2*c2 + s2*s2) / w2 : 0.0);
+		return distribution;
+	}
+
+	/**
+	* Returns the distribution of the last run, 180 bins from -90 degrees, 
+	* normalized to a sum of 1.
+	*/
+	public float[] getDistribution() {
+		return distribution;
+	}
+
+	/**
+	* Returns the dominant direction of the last run, in degrees in 
+	* [-90, 90].
+	*/
+	public double getDominantDirection() {
+		return dominant;
+	}
+
+	/**
+	* Returns the coherency of the last run, in [0, 1].
+	*/
+	public double getCoherency() {
+		return coherency;
+	}
+
+	private double[] getWindow(int n) {
+		double w[] = new double[n];
+		for (int i=0; i<n; i++)
+			w[i] = (window == WINDOW_HANN && n > 1 ? 0.5 - 0.5 * Math.cos(2.0 * Math.PI * i / (n-1)) : 1.0);
+		return w;
+	}
+
+}
@@ -1 +1 @@
-package imageware;/** * Class Convolver. Routines to convolve a 1D signal applying mirror boundary * conditions. *  *  * @author Daniel Sage Biomedical Imaging Group Ecole Polytechnique Federale de *         Lausanne, Lausanne, Switzerland */public class Convolver extends Object {	private static double	tolerance	= 10e-6;	/**	 * Convolution with a Finite Impulse Response (FIR) filter.	 * 	 * Note: Only with the periodic boundary conditions.	 * 	 * @param input	 *            1D input signal	 * @param kernel	 *            kernel of the filter	 */	public static double[] convolveFIR(double[] input, double[] kernel) {		int l = input.length;		if (l <= 1)			throw new IllegalArgumentException("convolveFIR: input signal too short");		double[] output = new double[l];		int indexq = kernel.length - 1;		int indexp = 0;		int n2 = 2 * (l - 1);		int origin = kernel.length / 2;		int m = 1 + origin - kernel.length;		m -= (m < 0L) ? (n2 * ((m + 1 - n2) / n2)) : (n2 * (m / n2));		int k;		for (int i = 0; i < l; i++) {			int j = -kernel.length;			k = m;			indexq = kernel.length - 1;			double Sum = 0.0;			while (j < 0) {				indexp = k;				int kp = ((k - l) < j) ? (j) : (k - l);				if (kp < 0L) {					for (int n = kp; n < 0; n++) {						Sum += input[indexp] * kernel[indexq];						indexq--;						indexp++;					}					k -= kp;					j -= kp;				}				indexp = n2 - k;				int km = ((k - n2) < j) ? (j) : (k - n2);				if (km < 0L) {					for (int n = km; n < 0; n++) {						Sum += input[indexp] * kernel[indexq];						indexq--;						indexp--;					}					j -= km;				}				k = 0;			}			if (++m == n2) {				m = 0;			}			output[i] = Sum;		}		return output;	}	/**	 * Convolve with with a Infinite Impluse Response filter (IIR)	 * 	 * @param input	 *            1D input signal	 * @param poles	 *            1D array containing the poles of the filter	 */	public static double[] convolveIIR(double[] input, double poles[]) {		double lambda = 1.0;		int l = input.length;		double[] output = new double[l];		for (int k = 0; k < poles.length; k++) {			lambda = lambda * (1.0 - poles[k]) * (1.0 - 1.0 / poles[k]);		}		for (int n = 0; n < l; n++) {			output[n] = input[n] * lambda;		}		for (int k = 0; k < poles.length; k++) {			output[0] = getInitialCausalCoefficientMirror(output, poles[k]);			for (int n = 1; n < l; n++) {				output[n] = output[n] + poles[k] * output[n - 1];			}			output[l - 1] = getInitialAntiCausalCoefficientMirror(output, poles[k]);			for (int n = l - 2; 0 <= n; n--) {				output[n] = poles[k] * (output[n + 1] - output[n]);			}		}		return output;	}	/**	 * Convolve a 1D signal with a Infinite Impluse Response 2nd order (IIR2)	 * 	 * Note: Only with the mirror (on bounds) boundary conditions.	 * 	 * Purpose: Recursive implementation of a symmetric 2nd order filter with	 * mirror symmetry boundary conditions :	 * 	 * 1 1 H[z] = --------------- * --------------- (1-b1*z-b2*z^2)	 * (1-b1/z-b2/z^2)	 * 	 * implemented in the following form:	 * 	 * a1+a2*z a1+a2/z H[z] = --------------- + --------------- - a1	 * (1-b1*z+b2*z^2) (1-b1/z+b2/z^2)	 * 	 * where : a1 = -(b2 + 1.0) * (1 - b1 + b2) / ((b2 - 1.0) * (1 + b1 + b2));	 * a2 = - a1 * b2 * b1 / (b2 + 1.0);	 * 	 * @param input	 *            1D input signal	 * @param b1	 *            first pole of the filter	 * @param b2	 *            second pole of the filter	 */	public static double[] convolveIIR2(double input[], double b1, double b2) {		int l = input.length;		int n2 = 2 * l;		double a1 = -(b2 + 1.0) * (1 - b1 + b2) / ((b2 - 1.0) * (1 + b1 + b2));		double a2 = -a1 * b2 * b1 / (b2 + 1.0);		// cBuffer stores temporary spline coefficients		double cBuffer[] = new double[n2];		// sBuffer contains a copy of s[] and a time reversed version of s[]		double sBuffer[] = new double[n2];		// copy signal s[] and its time reversed version to sBuffer[]		for (int n = 0; n < l; n++) {			sBuffer[n] = input[n];			sBuffer[n2 - n - 1] = input[n];		}		// Determine the start index n0 for the causal recursion. n0 is chosen		// such		// that the error of cBuffer[0] and cBuffer[1] is smaller than the		// specified 'Tolerance'.		int n0 = 2;		if ((tolerance > 0.0) && (b2 != 1.0)) {			n0 = n2 - (int) Math.ceil(2.0 * Math.log(tolerance) / Math.log(b2));		}		if (n0 < 2) {			n0 = 2;		}		cBuffer[n0 - 1] = 0.0;		cBuffer[n0 - 2] = 0.0;		for (int n = n0; n < n2; n++) {			cBuffer[n] = a1 * sBuffer[n] + a2 * sBuffer[n - 1] + b1 * cBuffer[n - 1] - b2 * cBuffer[n - 2];		}		cBuffer[0] = a1 * sBuffer[0] + a2 * sBuffer[n2 - 1] + b1 * cBuffer[n2 - 1] - b2 * cBuffer[n2 - 2];		cBuffer[1] = a1 * sBuffer[1] + a2 * sBuffer[0] + b1 * cBuffer[0] - b2 * cBuffer[n2 - 1];		// compute the remaining spline coefficients cBuffer(z) = H_{+}(z) *		// sBuffer(z) by		// recursive filtering		for (int n = 2; n < n2; n++) {			cBuffer[n] = a1 * sBuffer[n] + a2 * sBuffer[n - 1] + b1 * cBuffer[n - 1] - b2 * cBuffer[n - 2];		}		// add together the temporary filter outputs to obtain the final spline		// coefficients		double[] output = new double[l];		for (int n = 0; n < l; n++) {			output[n] = cBuffer[n] + cBuffer[n2 - n - 1] - a1 * input[n];		}		return output;	}	/**	 */	private static double getInitialAntiCausalCoefficientMirror(double[] c, double z) {		return ((z * c[c.length - 2] + c[c.length - 1]) * z / (z * z - 1.0));	}	/**	 */	private static double getInitialCausalCoefficientMirror(double[] c, double z) {		double z1 = z, zn = Math.pow(z, c.length - 1);		double sum = c[0] + zn * c[c.length - 1];		int horizon = c.length;		if (0.0 < tolerance) {			horizon = 2 + (int) (Math.log(tolerance) / Math.log(Math.abs(z)));			horizon = (horizon < c.length) ? (horizon) : (c.length);		}		zn = zn * zn;		for (int n = 1; (n < (horizon - 1)); n++) {			zn = zn / z;			sum = sum + (z1 + zn) * c[n];			z1 = z1 * z;		}		return (sum / (1.0 - Math.pow(z, 2 * c.length - 2)));	}} // end of classe
\ No newline at end of file
+package imageware;/** * Class Convolver. Routines to convolve a 1D signal applying mirror boundary * conditions. *  * The line engine pads a line once with the MIRROR, PERIODIC or NONE (zero) * boundary conditions, or convolves a batch of interleaved lanes already * padded. The 3-taps, symmetric and antisymmetric kernels have specialised * loops. The kernel is centered at kernel.length/2 and applied as a * correlation: output[i] = sum_k kernel[k] * input[i + k - origin]. The 2D * filters run the lanes in parallel through orientation.Convolution, on the * shared scheduler and with the cancellation of the caller. *  * @author Daniel Sage Biomedical Imaging Group Ecole Polytechnique Federale de *         Lausanne, Lausanne, Switzerland */public class Convolver extends Object {	private static double	tolerance	= 10e-6;	/**	 * Convolution with a Finite Impulse Response (FIR) filter.	 * 	 * Note: Only with the periodic boundary conditions.	 * 	 * @param input	 *            1D input signal	 * @param kernel	 *            kernel of the filter	 */	public static double[] convolveFIR(double[] input, double[] kernel) {		int l = input.length;		if (l <= 1)			throw new IllegalArgumentException("convolveFIR: input signal too short");		double[] output = new double[l];		int indexq = kernel.length - 1;		int indexp = 0;		int n2 = 2 * (l - 1);		int origin = kernel.length / 2;		int m = 1 + origin - kernel.length;		m -= (m < 0L) ? (n2 * ((m + 1 - n2) / n2)) : (n2 * (m / n2));		int k;		for (int i = 0; i < l; i++) {			int j = -kernel.length;			k = m;			indexq = kernel.length - 1;			double Sum = 0.0;			while (j < 0) {				indexp = k;				int kp = ((k - l) < j) ? (j) : (k - l);				if (kp < 0L) {					for (int n = kp; n < 0; n++) {						Sum += input[indexp] * kernel[indexq];						indexq--;						indexp++;					}					k -= kp;					j -= kp;				}				indexp = n2 - k;				int km = ((k - n2) < j) ? (j) : (k - n2);				if (km < 0L) {					for (int n = km; n < 0; n++) {						Sum += input[indexp] * kernel[indexq];						indexq--;						indexp--;					}					j -= km;				}				k = 0;			}			if (++m == n2) {				m = 0;			}			output[i] = Sum;		}		return output;	}	/**	 * Convolve with with a Infinite Impluse Response filter (IIR)	 * 	 * @param input	 *            1D input signal	 * @param poles	 *            1D array containing the poles of the filter	 */	public static double[] convolveIIR(double[] input, double poles[]) {		double lambda = 1.0;		int l = input.length;		double[] output = new double[l];		for (int k = 0; k < poles.length; k++) {			lambda = lambda * (1.0 - poles[k]) * (1.0 - 1.0 / poles[k]);		}		for (int n = 0; n < l; n++) {			output[n] = input[n] * lambda;		}		for (int k = 0; k < poles.length; k++) {			output[0] = getInitialCausalCoefficientMirror(output, poles[k]);			for (int n = 1; n < l; n++) {				output[n] = output[n] + poles[k] * output[n - 1];			}			output[l - 1] = getInitialAntiCausalCoefficientMirror(output, poles[k]);			for (int n = l - 2; 0 <= n; n--) {				output[n] = poles[k] * (output[n + 1] - output[n]);			}		}		return output;	}	/**	 * Convolve a 1D signal with a Infinite Impluse Response 2nd order (IIR2)	 * 	 * Note: Only with the mirror (on bounds) boundary conditions.	 * 	 * Purpose: Recursive implementation of a symmetric 2nd order filter with	 * mirror symmetry boundary conditions :	 * 	 * 1 1 H[z] = --------------- * --------------- (1-b1*z-b2*z^2)	 * (1-b1/z-b2/z^2)	 * 	 * implemented in the following form:	 * 	 * a1+a2*z a1+a2/z H[z] = --------------- + --------------- - a1	 * (1-b1*z+b2*z^2) (1-b1/z+b2/z^2)	 * 	 * where : a1 = -(b2 + 1.0) * (1 - b1 + b2) / ((b2 - 1.0) * (1 + b1 + b2));	 * a2 = - a1 * b2 * b1 / (b2 + 1.0);	 * 	 * @param input	 *            1D input signal	 * @param b1	 *            first pole of the filter	 * @param b2	 *            second pole of the filter	 */	public static double[] convolveIIR2(double input[], double b1, double b2) {		int l = input.length;		int n2 = 2 * l;		double a1 = -(b2 + 1.0) * (1 - b1 + b2) / ((b2 - 1.0) * (1 + b1 + b2));		double a2 = -a1 * b2 * b1 / (b2 + 1.0);		// cBuffer stores temporary spline coefficients		double cBuffer[] = new double[n2];		// sBuffer contains a copy of s[] and a time reversed version of s[]		double sBuffer[] = new double[n2];		// copy signal s[] and its time reversed version to sBuffer[]		for (int n = 0; n < l; n++) {			sBuffer[n] = input[n];			sBuffer[n2 - n - 1] = input[n];		}		// Determine the start index n0 for the causal recursion. n0 is chosen		// such		// that the error of cBuffer[0] and cBuffer[1] is smaller than the		// specified 'Tolerance'.		int n0 = 2;		if ((tolerance > 0.0) && (b2 != 1.0)) {			n0 = n2 - (int) Math.ceil(2.0 * Math.log(tolerance) / Math.log(b2));		}		if (n0 < 2) {			n0 = 2;		}		cBuffer[n0 - 1] = 0.0;		cBuffer[n0 - 2] = 0.0;		for (int n = n0; n < n2; n++) {			cBuffer[n] = a1 * sBuffer[n] + a2 * sBuffer[n - 1] + b1 * cBuffer[n - 1] - b2 * cBuffer[n - 2];		}		cBuffer[0] = a1 * sBuffer[0] + a2 * sBuffer[n2 - 1] + b1 * cBuffer[n2 - 1] - b2 * cBuffer[n2 - 2];		cBuffer[1] = a1 * sBuffer[1] + a2 * sBuffer[0] + b1 * cBuffer[0] - b2 * cBuffer[n2 - 1];		// compute the remaining spline coefficients cBuffer(z) = H_{+}(z) *		// sBuffer(z) by		// recursive filtering		for (int n = 2; n < n2; n++) {			cBuffer[n] = a1 * sBuffer[n] + a2 * sBuffer[n - 1] + b1 * cBuffer[n - 1] - b2 * cBuffer[n - 2];		}		// add together the temporary filter outputs to obtain the final spline		// coefficients		double[] output = new double[l];		for (int n = 0; n < l; n++) {			output[n] = cBuffer[n] + cBuffer[n2 - n - 1] - a1 * input[n];		}		return output;	}	/**	 */	private static double getInitialAntiCausalCoefficientMirror(double[] c, double z) {		return ((z * c[c.length - 2] + c[c.length - 1]) * z / (z * z - 1.0));	}	/**	 */	private static double getInitialCausalCoefficientMirror(double[] c, double z) {		double z1 = z, zn = Math.pow(z, c.length - 1);		double sum = c[0] + zn * c[c.length - 1];		int horizon = c.length;		if (0.0 < tolerance) {			horizon = 2 + (int) (Math.log(tolerance) / Math.log(Math.abs(z)));			horizon = (horizon < c.length) ? (horizon) : (c.length);		}		zn = zn * zn;		for (int n = 1; (n < (horizon - 1)); n++) {			zn = zn / z;			sum = sum + (z1 + zn) * c[n];			z1 = z1 * z;		}		return (sum / (1.0 - Math.pow(z, 2 * c.length - 2)));	}	private static final int	GENERAL			= 0;	private static final int	SYMMETRIC		= 1;	private static final int	ANTISYMMETRIC	= 2;	private static final ThreadLocal<double[][]> scratches = new ThreadLocal<double[][]>() {		protected double[][] initialValue() {			return new double[3][0];		}	};	/**	 * Convolves a 1D signal with a kernel, the signal is padded once	 * according to the boundary conditions.	 * 	 * @param input	 *            1D input signal	 * @param output	 *            1D output signal, same length as the input	 * @param kernel	 *            kernel of the filter, centered at kernel.length/2	 * @param boundaryConditions	 *            MIRROR, PERIODIC or NONE (zero outside)	 */	public static void convolve(double[] input, double[] output, double[] kernel, byte boundaryConditions) {		int n = input.length;		int origin = kernel.length / 2;		double padded[] = getScratch(0, n + kernel.length - 1);		pad(input, padded, origin, kernel.length - 1 - origin, boundaryConditions);		convolvePadded(padded, output, n, kernel);	}	/**	 * Copies a 1D signal into padded with left samples before and right 	 * samples after it, according to the boundary conditions.	 * 	 * @param input	 *            1D input signal	 * @param padded	 *            1D padded signal, at least left + input.length + right	 * @param left	 *            number of samples before the signal	 * @param right	 *            number of samples after the signal	 * @param boundaryConditions	 *            MIRROR, PERIODIC or NONE (zero outside)	 */	public static void pad(double[] input, double[] padded, int left, int right, byte boundaryConditions) {		int n = input.length;		System.arraycopy(input, 0, padded, left, n);		for (int i = -left; i < 0; i++)			padded[i + left] = getBoundaryValue(input, i, boundaryConditions);		for (int i = n; i < n + right; i++)			padded[i + left] = getBoundaryValue(input, i, boundaryConditions);	}	/**	 * Convolves a batch of interleaved lanes already padded. The sample i of 	 * the lane l is stored at [i*lanes + l], the samples [from, to[ of the 	 * output are computed from the samples [from-origin, to-origin+kernel.length-1[	 * of the padded input.	 * 	 * @param padded	 *            interleaved padded input lanes	 * @param output	 *            interleaved output lanes, indexed as the padded input	 * @param lanes	 *            number of lanes	 * @param from	 *            first output sample	 * @param to	 *            last output sample, excluded	 * @param kernel	 *            kernel of the filter, centered at kernel.length/2	 */	public static void convolveLanes(double[] padded, double[] output, int lanes, int from, int to, double[] kernel) {		int nk = kernel.length;		int origin = nk / 2;		int symmetry = getSymmetry(kernel);		for (int i = from; i < to; i++) {			int b = i * lanes;			if (symmetry == GENERAL) {				for (int l = 0; l < lanes; l++)					output[b + l] = 0.0;				for (int k = 0; k < nk; k++) {					double h = kernel[k];					int bk = b + (k - origin) * lanes;					for (int l = 0; l < lanes; l++)						output[b + l] += h * padded[bk + l];				}			}			else {				double sign = (symmetry == SYMMETRIC ? 1.0 : -1.0);				double hc = kernel[origin];				for (int l = 0; l < lanes; l++)					output[b + l] = hc * padded[b + l];				for (int j = 1; j <= origin; j++) {					double h = kernel[origin + j];					int bm = b - j * lanes;					int bp = b + j * lanes;					for (int l = 0; l < lanes; l++)						output[b + l] += h * (padded[bp + l] + sign * padded[bm + l]);				}			}		}	}	/**	 */	private static void convolvePadded(double[] padded, double[] output, int n, double[] kernel) {		int nk = kernel.length;		if (nk == 3) {			double h0 = kernel[0];			double h1 = kernel[1];			double h2 = kernel[2];			for (int i = 0; i < n; i++)				output[i] = h0 * padded[i] + h1 * padded[i + 1] + h2 * padded[i + 2];			return;		}		int origin = nk / 2;		int symmetry = getSymmetry(kernel);		if (symmetry == GENERAL) {			for (int i = 0; i < n; i++) {				double sum = 0.0;				for (int k = 0; k < nk; k++)					sum += kernel[k] * padded[i + k];				output[i] = sum;			}			return;		}		double sign = (symmetry == SYMMETRIC ? 1.0 : -1.0);		double hc = kernel[origin];		for (int i = 0; i < n; i++) {			int c = i + origin;			double sum = hc * padded[c];			for (int j = 1; j <= origin; j++)				sum += kernel[origin + j] * (padded[c + j] + sign * padded[c - j]);			output[i] = sum;		}	}	/**	 * Returns SYMMETRIC or ANTISYMMETRIC for an odd kernel with this	 * symmetry around its center, GENERAL otherwise.	 */	private static int getSymmetry(double[] kernel) {		int nk = kernel.length;		if (nk % 2 == 0)			return GENERAL;		boolean symmetric = true;		boolean antisymmetric = kernel[nk / 2] == 0.0;		for (int k = 0; k < nk / 2; k++) {			symmetric &= kernel[k] == kernel[nk - 1 - k];			antisymmetric &= kernel[k] == -kernel[nk - 1 - k];		}		return (symmetric ? SYMMETRIC : (antisymmetric ? ANTISYMMETRIC : GENERAL));	}	/**	 * Returns the value of a signal at any position i according to the	 * boundary conditions.	 */	private static double getBoundaryValue(double[] input, int i, byte boundaryConditions) {		int n = input.length;		switch (boundaryConditions) {		case ImageWare.MIRROR:			if (n == 1)				return input[0];			int period = 2 * n - 2;			i = i % period;			if (i < 0)				i += period;			return input[i < n ? i : period - i];		case ImageWare.PERIODIC:			i = i % n;			return input[i < 0 ? i + n : i];		case ImageWare.NONE:			return 0.0;		default:			throw new IllegalArgumentException("Convolver: unknown boundary conditions " + boundaryConditions);		}	}	/**	 */	private static double[] getScratch(int index, int size) {		double scratch[][] = scratches.get();		if (scratch[index].length < size)			scratch[index] = new double[size];		return scratch[index];	}} // end of classe
\ No newline at end of file
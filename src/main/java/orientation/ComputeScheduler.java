@@ -0,0 +1,183 @@
+//==============================================================================
+//
+// Project: Directional Image Analysis - OrientationJ plugin
+// 
+// Author: Daniel Sage
+// 
+// Organization: Biomedical Imaging Group (BIG)
+// Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+//
+// Information: 
+// OrientationJ: http://bigwww.epfl.ch/demo/orientation/
+// MonogenicJ: http://bigwww.epfl.ch/demo/monogenic/
+//  
+//
+// Reference on methods and plugin
+// Z. Püspöki, M. Storath, D. Sage, M. Unser
+// "Transforms and Operators for Directional Bioimage Analysis: A Survey," 
+// Advances in Anatomy, Embryology and Cell Biology, vol. 219, Focus on Bio-Image Informatics, 
+// Springer International Publishing, ch. 3, pp. 69-93, May 21, 2016.
+//
+// Reference on applications
+// E. Fonck, G.G. Feigl, J. Fasel, D. Sage, M. Unser, D.A. Ruefenacht, N. Stergiopulos 
+// "Effect of Aging on Elastin Functionality in Human Cerebral Arteries,"
+// Stroke, vol. 40, no. 7, pp. 2552-2556, July 2009.
+//
+// R. Rezakhaniha, A. Agianniotis, J.T.C. Schrauwen, A. Griffa, D. Sage, C.V.C. Bouten, F.N. van de Vosse, M. Unser, N. Stergiopulos
+// "Experimental Investigation of Collagen Waviness and Orientation in the Arterial Adventitia Using Confocal Laser Scanning Microscopy,"
+// Biomechanics and Modeling in Mechanobiology, vol. 11, no. 3-4, pp. 461-473, 2012.
+
+// Conditions of use: You'll be free to use this software for research purposes,
+// but you should not redistribute it without our consent. In addition, we 
+// expect you to include a citation or acknowledgment whenever you present or 
+// publish results that are based on it.
+//
+// History:
+// - Updated (Daniel Sage, 24 January 2011)
+// - Added the Vector field (Daniel Sage, 1 March 2017)
+//
+//==============================================================================
+
+package orientation;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Shared compute scheduler of the orientation package.
+ * 
+ * One long-lived work-stealing pool serves all the runs, instead of creating 
+ * a new pool for every run. The waiting methods are blocking: a thread 
+ * waiting for a result never spins. A join called from a task of the pool 
+ * helps to execute the pending tasks instead of blocking the worker.
+ */
+public class ComputeScheduler {
+
+	private static ForkJoinPool pool;
+
+	/**
+	 * Body of a parallel loop over a range of lines [lo, hi[.
+	 */
+	public interface Range {
+		public void process(int lo, int hi);
+	}
+
+	/**
+	 * Returns the shared pool, created on the first call with one worker 
+	 * per available processor. The workers are daemon threads.
+	 */
+	public static synchronized ForkJoinPool getPool() {
+		if (pool == null)
+			pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		return pool;
+	}
+
+	/**
+	 * Returns the number of workers of the shared pool.
+	 */
+	public static int getParallelism() {
+		return getPool().getParallelism();
+	}
+
+	/**
+	 * Submits a task to the shared pool.
+	 */
+	public static Future<?> submit(Runnable task) {
+		return getPool().submit(task);
+	}
+
+	/**
+	 * Submits a task returning a value to the shared pool.
+	 */
+	public static <T> Future<T> submit(Callable<T> task) {
+		return getPool().submit(task);
+	}
+
+	/**
+	 * Runs a fork-join task in the shared pool and waits for its completion.
+	 */
+	public static <T> T invoke(ForkJoinTask<T> task) {
+		ForkJoinPool shared = getPool();
+		if (ForkJoinTask.getPool() == shared)
+			return task.invoke();
+		return shared.invoke(task);
+	}
+
+	/**
+	 * Runs the body over the lines [0, n[ split in ranges of at least grain 
+	 * lines, and waits for the completion.
+	 */
+	public static void parallel(int n, int grain, Range range) {
+		if (n <= 0)
+			return;
+		invoke(new RangeTask(range, 0, n, Math.max(1, grain)));
+	}
+
+	/**
+	 * Waits for the completion of a task and returns its result.
+	 * 
+	 * The exception of the task is thrown again in the calling thread. If 
+	 * the waiting thread is interrupted, the task is cancelled and a 
+	 * CancellationException is thrown.
+	 */
+	public static <T> T join(Future<T> future) {
+		try {
+			return future.get();
+		}
+		catch (InterruptedException ex) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new CancellationException("Interrupted while waiting");
+		}
+		catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new RuntimeException(cause);
+		}
+	}
+
+	/**
+	 * Waits for the completion of all the tasks.
+	 */
+	public static void joinAll(Future<?>... futures) {
+		for (Future<?> future : futures)
+			join(future);
+	}
+
+	/**
+	 * Recursive task splitting a range of lines until the grain size.
+	 */
+	private static class RangeTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		private Range range;
+		private int lo;
+		private int hi;
+		private int grain;
+
+		public RangeTask(Range range, int lo, int hi, int grain) {
+			this.range = range;
+			this.lo = lo;
+			this.hi = hi;
+			this.grain = grain;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo <= grain) {
+				range.process(lo, hi);
+				return;
+			}
+			int mid = (lo + hi) >>> 1;
+			invokeAll(new RangeTask(range, lo, mid, grain), new RangeTask(range, mid, hi, grain));
+		}
+	}
+}
@@ -0,0 +1,455 @@
+//==============================================================================
+//
+// Project: Directional Image Analysis - OrientationJ plugin
+// 
+// Author: Daniel Sage
+// 
+// Organization: Biomedical Imaging Group (BIG)
+// Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+//
+// Information: 
+// OrientationJ: http://bigwww.epfl.ch/demo/orientation/
+// MonogenicJ: http://bigwww.epfl.ch/demo/monogenic/
+//  
+//
+// Reference on methods and plugin
+// Z. Püspöki, M. Storath, D. Sage, M. Unser
+// "Transforms and Operators for Directional Bioimage Analysis: A Survey," 
+// Advances in Anatomy, Embryology and Cell Biology, vol. 219, Focus on Bio-Image Informatics, 
+// Springer International Publishing, ch. 3, pp. 69-93, May 21, 2016.
+//
+// Reference on applications
+// E. Fonck, G.G. Feigl, J. Fasel, D. Sage, M. Unser, D.A. Ruefenacht, N. Stergiopulos 
+// "Effect of Aging on Elastin Functionality in Human Cerebral Arteries,"
+// Stroke, vol. 40, no. 7, pp. 2552-2556, July 2009.
+//
+// R. Rezakhaniha, A. Agianniotis, J.T.C. Schrauwen, A. Griffa, D. Sage, C.V.C. Bouten, F.N. van de Vosse, M. Unser, N. Stergiopulos
+// "Experimental Investigation of Collagen Waviness and Orientation in the Arterial Adventitia Using Confocal Laser Scanning Microscopy,"
+// Biomechanics and Modeling in Mechanobiology, vol. 11, no. 3-4, pp. 461-473, 2012.
+
+// Conditions of use: You'll be free to use this software for research purposes,
+// but you should not redistribute it without our consent. In addition, we 
+// expect you to include a citation or acknowledgment whenever you present or 
+// publish results that are based on it.
+//
+// History:
+// - Updated (Daniel Sage, 24 January 2011)
+// - Added the Vector field (Daniel Sage, 1 March 2017)
+//
+//==============================================================================
+
+package orientation;
+
+import java.io.File;
+
+import additionaluserinterface.Settings;
+import fft.ComplexSignal;
+import fft.FFT1D;
+import fft.FFT2D;
+import ij.IJ;
+import imageware.Convolver;
+
+/**
+ * Front end of the separable Gaussian and Gaussian-derivative filters.
+ * 
+ * A filter is a Gaussian smoothing followed by the central differences of 
+ * the derivative order, with mirror boundary conditions. It runs as a direct 
+ * FIR convolution, as the recursive IIR filter (RecursiveGaussian) or in the 
+ * Fourier domain. The FIR and the Fourier methods compute the same operator, 
+ * the sampled Gaussian kernel of radius 4 sigma, up to the rounding errors. 
+ * The recursive filter only approximates it. A pair of sampled kernels 
+ * given by the caller is always applied as a direct correlation.
+ * 
+ * The selection is deterministic where the methods disagree: the recursive 
+ * filter is used if and only if the smoothings are at least MIN_RECURSIVE. 
+ * Otherwise the cheapest of the FIR and the Fourier methods is selected by 
+ * a cost model of the kernel support, the image size and the FFT-friendliness 
+ * of the padded sizes. The constants of the model are measured once per 
+ * machine by calibrate(), outside of any computation, and stored in their 
+ * own file OrientationJ-Convolution.txt of the plugins directory. Until 
+ * then, reference constants are used.
+ */
+public class Convolution {
+
+	public static final int METHOD_FIR = 0;
+	public static final int METHOD_IIR = 1;
+	public static final int METHOD_FFT = 2;
+
+	/** Minimum number of lines processed by a task */
+	private static final int GRAIN = 16;
+
+	/** Smallest smoothing for which the recursive filter is accurate enough */
+	private static final double MIN_RECURSIVE = 2.0;
+
+	/** Number of lines filtered together */
+	private static final int LANES = RecursiveGaussian.LANES;
+
+	private static final int COST_FIR		= 0;	// per tap and per sample
+	private static final int COST_IIR		= 1;	// per sample
+	private static final int COST_RADIX2	= 2;	// per sample and per stage
+	private static final int COST_MIXED	= 3;	// per sample and per stage
+	private static final String KEYS[] = {"Cost_FIR", "Cost_IIR", "Cost_FFT_Radix2", "Cost_FFT_Mixed"};
+
+	/** Reference constants of the cost model, in nanoseconds */
+	private static final double REFERENCE[] = {1.5, 6.5, 2.5, 10.0};
+
+	private static double costs[] = REFERENCE;
+	private static boolean calibrated = false;
+
+	private static final ThreadLocal<double[][]> scratches = new ThreadLocal<double[][]>() {
+		protected double[][] initialValue() {
+			return new double[2][0];
+		}
+	};
+
+	/**
+	 * Filters in place the image data of size nx*ny stored row-major, with 
+	 * sigmaX and the derivative orderX along x, sigmaY and orderY along y, 
+	 * by the cheapest method.
+	 */
+	public static void filter(double data[], int nx, int ny, 
+			double sigmaX, int orderX, double sigmaY, int orderY, Cancellation cancellation) {
+		int method = select(nx, ny, sigmaX, orderX, sigmaY, orderY);
+		filter(data, nx, ny, sigmaX, orderX, sigmaY, orderY, method, cancellation);
+	}
+
+	/**
+	 * Filters in place the image data of size nx*ny stored row-major by a 
+	 * given method.
+	 */
+	public static void filter(final double data[], final int nx, final int ny, 
+			final double sigmaX, final int orderX, final double sigmaY, final int orderY, 
+			final int method, final Cancellation cancellation) {
+		if (method == METHOD_FFT) {
+			cancellation.check();
+			filterFourier(data, nx, ny, sigmaX, orderX, sigmaY, orderY);
+			return;
+		}
+		ComputeScheduler.parallel(ny, GRAIN, new ComputeScheduler.Range() {
+			public void process(int lo, int hi) {
+				for (int y=lo; y<hi; y+=LANES) {
+					cancellation.check();
+					filterLines(data, y*nx, 1, nx, nx, Math.min(LANES, hi - y), sigmaX, orderX, method);
+				}
+			}
+		});
+		ComputeScheduler.parallel(nx, GRAIN, new ComputeScheduler.Range() {
+			public void process(int lo, int hi) {
+				for (int x=lo; x<hi; x+=LANES) {
+					cancellation.check();
+					filterLines(data, x, nx, 1, ny, Math.min(LANES, hi - x), sigmaY, orderY, method);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Filters in place the image data of size nx*ny stored row-major by the 
+	 * direct correlation with kernelX along x and kernelY along y, centered 
+	 * at length/2, with mirror boundary conditions.
+	 */
+	public static void filter(final double data[], final int nx, final int ny, 
+			final double kernelX[], final double kernelY[], final Cancellation cancellation) {
+		ComputeScheduler.parallel(ny, GRAIN, new ComputeScheduler.Range() {
+			public void process(int lo, int hi) {
+				for (int y=lo; y<hi; y+=LANES) {
+					cancellation.check();
+					correlateLines(data, y*nx, 1, nx, nx, Math.min(LANES, hi - y), kernelX);
+				}
+			}
+		});
+		ComputeScheduler.parallel(nx, GRAIN, new ComputeScheduler.Range() {
+			public void process(int lo, int hi) {
+				for (int x=lo; x<hi; x+=LANES) {
+					cancellation.check();
+					correlateLines(data, x, nx, 1, ny, Math.min(LANES, hi - x), kernelY);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Returns the method of a filter. The recursive filter is selected if an 
+	 * axis is smoothed and every smoothing is 0 or at least MIN_RECURSIVE, 
+	 * whatever the machine. 
+	 * Otherwise the cheapest of the FIR and the Fourier methods is selected 
+	 * according to the cost model, they give the same results.
+	 */
+	public static int select(int nx, int ny, double sigmaX, int orderX, double sigmaY, int orderY) {
+		double sx = RecursiveGaussian.getSmoothing(sigmaX, orderX);
+		double sy = RecursiveGaussian.getSmoothing(sigmaY, orderY);
+		if ((sx > 0 || sy > 0) && (sx == 0 || sx >= MIN_RECURSIVE) && (sy == 0 || sy >= MIN_RECURSIVE))
+			return METHOD_IIR;
+		double fir = getCost(METHOD_FIR, nx, ny, sigmaX, orderX, sigmaY, orderY);
+		double fft = getCost(METHOD_FFT, nx, ny, sigmaX, orderX, sigmaY, orderY);
+		return (fir <= fft ? METHOD_FIR : METHOD_FFT);
+	}
+
+	/**
+	 * Returns the estimated cost of a method, in nanoseconds.
+	 */
+	public static double getCost(int method, int nx, int ny, double sigmaX, int orderX, double sigmaY, int orderY) {
+		double c[] = getCosts();
+		double sx = RecursiveGaussian.getSmoothing(sigmaX, orderX);
+		double sy = RecursiveGaussian.getSmoothing(sigmaY, orderY);
+		int mx = nx + 2 * RecursiveGaussian.getMargin(sx);
+		int my = ny + 2 * RecursiveGaussian.getMargin(sy);
+		if (method == METHOD_FFT) {
+			int px = getPaddedSize(mx);
+			int py = getPaddedSize(my);
+			// Forward and inverse transforms
+			return 2.0 * px * py * (getStageCost(px) * log2(px) + getStageCost(py) * log2(py));
+		}
+		if (method == METHOD_FIR)
+			return c[COST_FIR] * ((sx > 0 ? getRadius(sx) + 1 : 0) * nx * ny + (sy > 0 ? getRadius(sy) + 1 : 0) * ny * nx);
+		return c[COST_IIR] * ((sx > 0 ? mx * ny : 0) + (sy > 0 ? my * nx : 0));
+	}
+
+	/**
+	 * Filters in place a batch of lanes by the FIR or the IIR method. The 
+	 * sample i of the lane l is data[offset + i*stride + l*laneStride].
+	 */
+	private static void filterLines(double data[], int offset, int stride, int laneStride, int length, int lanes, 
+			double sigma, int order, int method) {
+		if (method == METHOD_IIR) {
+			RecursiveGaussian.filter(data, offset, stride, laneStride, length, lanes, sigma, order);
+			return;
+		}
+		double smoothing = RecursiveGaussian.getSmoothing(sigma, order);
+		if (smoothing == 0 && order == 0)
+			return;
+		int margin = RecursiveGaussian.getMargin(smoothing);
+		int n = length + 2 * margin;
+		double scratch[][] = scratches.get();
+		if (scratch[0].length < n * lanes) {
+			scratch[0] = new double[n * lanes];
+			scratch[1] = new double[n * lanes];
+		}
+		double w[] = scratch[0];
+		RecursiveGaussian.load(data, offset, stride, laneStride, length, lanes, margin, w);
+		if (smoothing > 0) {
+			double v[] = scratch[1];
+			// Only the samples read by the differences are convolved
+			Convolver.convolveLanes(w, v, lanes, margin - 1, margin + length + 1, getKernel(smoothing));
+			w = v;
+		}
+		RecursiveGaussian.store(w, margin, order, data, offset, stride, laneStride, length, lanes);
+	}
+
+	/**
+	 * Correlates in place a batch of lanes with a kernel, laid out as in 
+	 * filterLines.
+	 */
+	private static void correlateLines(double data[], int offset, int stride, int laneStride, int length, int lanes, double kernel[]) {
+		int margin = kernel.length / 2;
+		int n = length + 2 * margin;
+		double scratch[][] = scratches.get();
+		if (scratch[0].length < n * lanes) {
+			scratch[0] = new double[n * lanes];
+			scratch[1] = new double[n * lanes];
+		}
+		RecursiveGaussian.load(data, offset, stride, laneStride, length, lanes, margin, scratch[0]);
+		Convolver.convolveLanes(scratch[0], scratch[1], lanes, margin, margin + length, kernel);
+		RecursiveGaussian.store(scratch[1], margin, 0, data, offset, stride, laneStride, length, lanes);
+	}
+
+	/**
+	 * Filters in place by multiplying the spectrum of the mirror-extended 
+	 * image, padded to FFT-friendly sizes.
+	 */
+	private static void filterFourier(double data[], int nx, int ny, double sigmaX, int orderX, double sigmaY, int orderY) {
+		double sx = RecursiveGaussian.getSmoothing(sigmaX, orderX);
+		double sy = RecursiveGaussian.getSmoothing(sigmaY, orderY);
+		int marginX = RecursiveGaussian.getMargin(sx);
+		int marginY = RecursiveGaussian.getMargin(sy);
+		int px = getPaddedSize(nx + 2 * marginX);
+		int py = getPaddedSize(ny + 2 * marginY);
+		double real[] = new double[px*py];
+		for (int y=0; y<py; y++) {
+			int k = RecursiveGaussian.mirror(y - marginY, ny) * nx;
+			for (int x=0; x<px; x++)
+				real[x + y*px] = data[k + RecursiveGaussian.mirror(x - marginX, nx)];
+		}
+		ComplexSignal fourier = FFT2D.transform(new ComplexSignal(real, px, py));
+		double hx[][] = getTransfer(px, sx, orderX);
+		double hy[][] = getTransfer(py, sy, orderY);
+		for (int y=0; y<py; y++) {
+			for (int x=0, k=y*px; x<px; x++, k++) {
+				double hr = hx[0][x] * hy[0][y] - hx[1][x] * hy[1][y];
+				double hi = hx[0][x] * hy[1][y] + hx[1][x] * hy[0][y];
+				double re = fourier.real[k];
+				double im = fourier.imag[k];
+				fourier.real[k] = re * hr - im * hi;
+				fourier.imag[k] = re * hi + im * hr;
+			}
+		}
+		ComplexSignal out = FFT2D.inverse(fourier);
+		for (int y=0; y<ny; y++)
+			System.arraycopy(out.real, (y + marginY) * px + marginX, data, y * nx, nx);
+	}
+
+	/**
+	 * Returns the real and imaginary parts of the frequency response of the 
+	 * smoothing by the sampled kernel followed by the differences, for a 
+	 * transform of n samples.
+	 */
+	private static double[][] getTransfer(int n, double smoothing, int order) {
+		double h[][] = new double[2][n];
+		double kernel[] = (smoothing > 0 ? getKernel(smoothing) : new double[] {1.0});
+		int r = kernel.length / 2;
+		for (int k=0; k<n; k++) {
+			double w = 2.0 * Math.PI * (k <= n/2 ? k : k - n) / n;
+			double g = kernel[r];
+			for (int j=1; j<=r; j++)
+				g += 2.0 * kernel[r + j] * Math.cos(j * w);
+			if (order == 1)
+				h[1][k] = g * Math.sin(w);
+			else if (order == 2)
+				h[0][k] = -4.0 * g * Math.sin(0.5 * w) * Math.sin(0.5 * w);
+			else
+				h[0][k] = g;
+		}
+		return h;
+	}
+
+	/**
+	 * Returns the sampled Gaussian kernel of radius 4 sigma, normalized to a 
+	 * unit sum.
+	 */
+	private static double[] getKernel(double sigma) {
+		int r = getRadius(sigma);
+		double kernel[] = new double[2 * r + 1];
+		double sum = 0.0;
+		for (int j=-r; j<=r; j++) {
+			kernel[j + r] = Math.exp(-0.5 * j * j / (sigma * sigma));
+			sum += kernel[j + r];
+		}
+		for (int j=0; j<kernel.length; j++)
+			kernel[j] /= sum;
+		return kernel;
+	}
+
+	private static int getRadius(double sigma) {
+		return (int)Math.ceil(4.0 * sigma);
+	}
+
+	/**
+	 * Returns the FFT size for at least n samples, the cheapest of the next 
+	 * power of 2 and the next product of 2, 3 and 5.
+	 */
+	static int getPaddedSize(int n) {
+		int pow2 = 1;
+		while (pow2 < n)
+			pow2 *= 2;
+		int smooth = n;
+		while (!isSmooth(smooth))
+			smooth++;
+		double c2 = getStageCost(pow2) * pow2 * log2(pow2);
+		double c5 = getStageCost(smooth) * smooth * log2(smooth);
+		return (c5 < c2 ? smooth : pow2);
+	}
+
+	private static boolean isSmooth(int n) {
+		for (int f=2; f<=5; f++)
+			while (n % f == 0)
+				n /= f;
+		return n == 1;
+	}
+
+	private static double getStageCost(int n) {
+		return getCosts()[(n & (n-1)) == 0 ? COST_RADIX2 : COST_MIXED];
+	}
+
+	private static double log2(int n) {
+		return Math.max(1.0, Math.log(n) / Math.log(2.0));
+	}
+
+	/**
+	 * Returns the constants of the cost model, the reference ones until 
+	 * calibrate() is called. They are never measured during a filtering.
+	 */
+	private static synchronized double[] getCosts() {
+		return costs;
+	}
+
+	/**
+	 * Loads the constants of the cost model from their file, or measures 
+	 * and stores them if they are missing. Only the first call of a session 
+	 * does the work. It is called before the computation starts, when the 
+	 * pool is idle, so the measures are not disturbed.
+	 */
+	public static synchronized void calibrate() {
+		if (calibrated)
+			return;
+		Settings settings = getSettings();
+		double c[] = new double[KEYS.length];
+		boolean stored = true;
+		for (int i=0; i<KEYS.length; i++) {
+			c[i] = (settings != null ? settings.loadValue(KEYS[i], 0.0) : 0.0);
+			stored &= c[i] > 0;
+		}
+		if (!stored) {
+			c = measure();
+			if (settings != null)
+				for (int i=0; i<KEYS.length; i++)
+					settings.storeValue(KEYS[i], c[i]);
+		}
+		costs = c;
+		calibrated = true;
+	}
+
+	/**
+	 * Returns the file of the constants of the cost model if it can be 
+	 * written. It is separate from the settings of the dialogs which rewrite 
+	 * their own file from their own state.
+	 */
+	private static Settings getSettings() {
+		String dir = IJ.getDirectory("plugins");
+		if (dir == null || !new File(dir).canWrite())
+			return null;
+		return new Settings("OrientationJ", dir + "OrientationJ-Convolution.txt");
+	}
+
+	/**
+	 * Measures the constants of the cost model on lines of 4096 samples, the 
+	 * best time of several runs is kept.
+	 */
+	private static double[] measure() {
+		int n = 4096;
+		int mixed = 3840;
+		double sigma = 4.0;
+		double c[] = new double[KEYS.length];
+		double data[] = new double[n * LANES];
+		double re[] = new double[n];
+		double im[] = new double[n];
+		for (int i=0; i<data.length; i++)
+			data[i] = Math.sin(0.1 * i);
+		FFT1D radix2 = new FFT1D(n);
+		FFT1D mix = new FFT1D(mixed);
+		int margin = RecursiveGaussian.getMargin(sigma);
+		double samples = (double)(n + 2 * margin) * LANES;
+		double convolved = (double)(n + 2) * LANES;
+		c[COST_FIR] = Double.MAX_VALUE;
+		c[COST_IIR] = Double.MAX_VALUE;
+		c[COST_RADIX2] = Double.MAX_VALUE;
+		c[COST_MIXED] = Double.MAX_VALUE;
+		for (int run=0; run<8; run++) {
+			long t0 = System.nanoTime();
+			filterLines(data, 0, LANES, 1, n, LANES, sigma, 0, METHOD_FIR);
+			long t1 = System.nanoTime();
+			filterLines(data, 0, LANES, 1, n, LANES, sigma, 0, METHOD_IIR);
+			long t2 = System.nanoTime();
+			radix2.transform(re, im, n, 0);
+			long t3 = System.nanoTime();
+			mix.transform(re, im, mixed, 0);
+			long t4 = System.nanoTime();
+			c[COST_FIR] = Math.min(c[COST_FIR], (t1 - t0) / (convolved * (getRadius(sigma) + 1)));
+			c[COST_IIR] = Math.min(c[COST_IIR], (t2 - t1) / samples);
+			c[COST_RADIX2] = Math.min(c[COST_RADIX2], (t3 - t2) / (n * log2(n)));
+			c[COST_MIXED] = Math.min(c[COST_MIXED], (t4 - t3) / (mixed * log2(mixed)));
+		}
+		for (int i=0; i<c.length; i++)
+			c[i] = Math.max(c[i], 1e-3);
+		return c;
+	}
+}
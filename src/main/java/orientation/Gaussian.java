@@ -46,104 +46,196 @@ import additionaluserinterface.WalkBar;
 * Implementation of the Gaussian filter as a cascade of 3 exponential filters. 
 * The boundary conditions are mirroring.
 * Thread or directly by calling the run()
+* All the channels of the signal are filtered in the same sweep.
 */
 public class Gaussian implements Runnable {
 
-	private double signal[][];
+	/** Number of adjacent columns filtered together */
+	public static final int LANES = 16;
+
+	/** Minimum number of lines processed by a task */
+	private static final int GRAIN = 16;
+
+	private static final ThreadLocal<Scratch> scratches = new ThreadLocal<Scratch>() {
+		protected Scratch initialValue() {
+			return new Scratch();
+		}
+	};
+
+
+	private TensorBuffer signal;
 	private double sigma;
 	private int nx;
 	private int ny;
+	private int channels;
+	private int batch;
 	private WalkBar walk;
 	private double wrange;
+	private GaussianPlan planX;
+	private GaussianPlan planY;
+	private Cancellation cancellation;
 	
 	/**
 	* Constructor based on the signal.
 	*/
-	public Gaussian(WalkBar walk, double wrange, double signal[][], double sigma, int nx, int ny) {
+	public Gaussian(WalkBar walk, double wrange, TensorBuffer signal, double sigma) {
+		this(walk, wrange, signal, sigma, new Cancellation());
+	}
+	
+	/**
+	* Constructor based on the signal, the filtering stops when the 
+	* cancellation is requested.
+	*/
+	public Gaussian(WalkBar walk, double wrange, TensorBuffer signal, double sigma, Cancellation cancellation) {
+		this.cancellation = cancellation;
 		this.walk = walk;
 		this.wrange = wrange;
 		this.signal = signal;
 		this.sigma = sigma;
-		this.nx = nx;
-		this.ny = ny;
+		this.nx = signal.getWidth();
+		this.ny = signal.getHeight();
+		this.channels = signal.getChannels();
+		this.batch = Math.max(1, LANES / channels);
+		this.planX = GaussianPlan.get(sigma, nx);
+		this.planY = GaussianPlan.get(sigma, ny);
 	}
-	
+
 	/**
-	* Run method.
+	* Returns the pole of the exponential filters for a given sigma.
 	*/
-	public void run() {
+	public static double getPole(double sigma) {
 		double s2 = sigma * sigma;
-		double pole = 1.0 + (3.0/s2) - (Math.sqrt(9.0+6.0*s2)/s2);
-	
-		for (int x=0; x<nx; x++) {
-			signal[x] = convolveIIR_TriplePole(signal[x], pole);
-		}
+		return 1.0 + (3.0/s2) - (Math.sqrt(9.0+6.0*s2)/s2);
+	}
+
+	/**
+	* Filters in place, by the cascade of exponential filters, a batch of 
+	* adjacent lanes of plan.getLength() samples. The sample i of the lane l 
+	* is data[offset + i*stride + l], the lanes are contiguous so the inner 
+	* loops run across them. A line of 1 sample is unchanged. The scratch 
+	* buffers are local to the calling thread.
+	*/
+	public static void filter(double data[], int offset, int stride, int lanes, GaussianPlan plan) {
+		int length = plan.length;
+		if (length < 2)
+			return;
+		double pole = plan.pole;
+		double lambda = plan.lambda;
+		int end = offset + length*stride;
+		for (int i=offset; i<end; i+=stride)
+			for (int l=0; l<lanes; l++)
+				data[i+l] *= lambda;
 
-		double row[]  = new double[nx];
-		for(int y=0; y<ny; y++) {
-			walk.increment(wrange/ny);
-			for (int x=0; x<nx; x++)
-				row[x] = signal[x][y];
-			row = convolveIIR_TriplePole(row, pole);
-			for (int x=0; x<nx; x++)
-				signal[x][y] = row[x];
+		double weights[] = plan.weights;
+		int horizon = plan.horizon;
+		double zfirst = plan.zfirst;
+		double normalization = plan.normalization;
+		double denominator = plan.denominator;
+		double sum[] = scratches.get().getSums(lanes);
+		int last = offset + (length-1)*stride;
+		for (int k=0; k<GaussianPlan.CASCADE; k++) {
+			for (int l=0; l<lanes; l++)
+				sum[l] = data[offset+l] + zfirst * data[last+l];
+			for (int n=1; n<horizon-1; n++) {
+				double w = weights[n];
+				int i = offset + n*stride;
+				for (int l=0; l<lanes; l++)
+					sum[l] = sum[l] + w * data[i+l];
+			}
+			for (int l=0; l<lanes; l++)
+				data[offset+l] = sum[l] / normalization;
+			for (int i=offset+stride; i<end; i+=stride) {
+				int j = i - stride;
+				for (int l=0; l<lanes; l++)
+					data[i+l] = data[i+l] + pole * data[j+l];
+			}
+			for (int l=0; l<lanes; l++)
+				data[last+l] = (pole * data[last-stride+l] + data[last+l]) * pole / denominator;
+			for (int i=last-stride; i>=offset; i-=stride) {
+				int j = i + stride;
+				for (int l=0; l<lanes; l++)
+					data[i+l] = pole * (data[j+l] - data[i+l]);
+			}
 		}
 	}
+	
+	/**
+	* Run method.
+	*/
+	public void run() {
+		filterColumns(0, nx);
+		filterRows(0, ny);
+	}
 
 	/**
-	* Convolve with with a Infinite Impulse Response filter (IIR)
+	* Run method, the columns then the rows are split across the threads of 
+	* the ComputeScheduler.
 	*/
-	private double[] convolveIIR_TriplePole(double[] signal, double pole) {
-		int l = signal.length;
-		int N = 9;
-		double lambda = 1.0;
-		double[] output = new double[l];
-		for (int k=0; k<N; k++) {
-			lambda = lambda * (1.0 - pole) * (1.0 - 1.0 / pole);
-		}
-		for (int n=0; n<l; n++) {
-			output[n] = signal[n] * lambda;
-		}
-		for (int k=0; k<N; k++) {
-			output[0] = getInitialCausalCoefficientMirror(output, pole);
-			for (int n=1; n<l ; n++) {
-				output[n] = output[n] + pole * output[n - 1];
+	public void runParallel() {
+		ComputeScheduler.parallel(nx, GRAIN, new ComputeScheduler.Range() {
+			public void process(int lo, int hi) {
+				filterColumns(lo, hi);
 			}
-			output[l-1] = getInitialAntiCausalCoefficientMirror(output, pole);
-			for (int n=l-2; 0 <= n; n--) {
-				output[n] = pole * (output[n+1] - output[n]);
+		});
+		ComputeScheduler.parallel(ny, GRAIN, new ComputeScheduler.Range() {
+			public void process(int lo, int hi) {
+				filterRows(lo, hi);
 			}
+		});
+	}
+
+	/**
+	* Filters along y the columns in the range [x0, x1[.
+	* The columns are filtered by batches of adjacent columns, LANES samples 
+	* wide with all their channels, the ranges can run concurrently.
+	*/
+	public void filterColumns(int x0, int x1) {
+		for (int x=x0; x<x1; x+=batch) {
+			cancellation.check();
+			int lanes = Math.min(batch, x1 - x);
+			int width = lanes * channels;
+			double block[] = scratches.get().getBlock(width * ny);
+			signal.getColumns(x, lanes, block);
+			filter(block, 0, width, width, planY);
+			signal.putColumns(x, lanes, block);
 		}
-		return output;
 	}
 
 	/**
-	* Initial conditions
+	* Filters along x the rows in the range [y0, y1[.
+	* The rows are filtered by batches of adjacent rows, LANES samples wide 
+	* with all their channels, the ranges can run concurrently.
 	*/
-	private double getInitialAntiCausalCoefficientMirror(double[] c, double z) {
-		return((z * c[c.length - 2] + c[c.length - 1]) * z / (z * z - 1.0));
+	public void filterRows(int y0, int y1) {
+		for(int y=y0; y<y1; y+=batch) {
+			cancellation.check();
+			int lanes = Math.min(batch, y1 - y);
+			int width = lanes * channels;
+			walk.increment(lanes*wrange/ny);
+			double block[] = scratches.get().getBlock(width * nx);
+			signal.getRows(y, lanes, block);
+			filter(block, 0, width, width, planX);
+			signal.putRows(y, lanes, block);
+		}
 	}
 
 	/**
-	* Initial conditions
+	* Scratch buffers of a thread, they grow on demand.
 	*/
-	private double getInitialCausalCoefficientMirror(double[] c, double z) {
-		double tolerance = 10e-6;
-		double z1 = z, zn = Math.pow(z, c.length - 1);
-		double sum = c[0] + zn * c[c.length - 1];
-		int horizon = c.length;
-
-		if (tolerance > 0.0 ) {
-			horizon = 2 + (int)(Math.log(tolerance) / Math.log(Math.abs(z)));
-			horizon = (horizon < c.length) ? (horizon) : (c.length);
+	private static class Scratch {
+		private double sums[] = new double[0];
+		private double block[] = new double[0];
+
+		private double[] getSums(int size) {
+			if (sums.length < size)
+				sums = new double[size];
+			return sums;
 		}
-		zn = zn * zn;
-		for (int n=1; n<horizon-1; n++) {
-			zn = zn / z;
-			sum = sum + (z1 + zn) * c[n];
-			z1 = z1 * z;
+
+		private double[] getBlock(int size) {
+			if (block.length < size)
+				block = new double[size];
+			return block;
 		}
-		return (sum / (1.0 - Math.pow(z, 2 * c.length - 2)));
 	}
-	
-}
\ No newline at end of file
+}
@@ -0,0 +1,156 @@
+//==============================================================================
+//
+// Project: Directional Image Analysis - OrientationJ plugin
+// 
+// Author: Daniel Sage
+// 
+// Organization: Biomedical Imaging Group (BIG)
+// Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+//
+// Information: 
+// OrientationJ: http://bigwww.epfl.ch/demo/orientation/
+// MonogenicJ: http://bigwww.epfl.ch/demo/monogenic/
+//  
+//
+// Reference on methods and plugin
+// Z. Püspöki, M. Storath, D. Sage, M. Unser
+// "Transforms and Operators for Directional Bioimage Analysis: A Survey," 
+// Advances in Anatomy, Embryology and Cell Biology, vol. 219, Focus on Bio-Image Informatics, 
+// Springer International Publishing, ch. 3, pp. 69-93, May 21, 2016.
+//
+// Reference on applications
+// E. Fonck, G.G. Feigl, J. Fasel, D. Sage, M. Unser, D.A. Ruefenacht, N. Stergiopulos 
+// "Effect of Aging on Elastin Functionality in Human Cerebral Arteries,"
+// Stroke, vol. 40, no. 7, pp. 2552-2556, July 2009.
+//
+// R. Rezakhaniha, A. Agianniotis, J.T.C. Schrauwen, A. Griffa, D. Sage, C.V.C. Bouten, F.N. van de Vosse, M. Unser, N. Stergiopulos
+// "Experimental Investigation of Collagen Waviness and Orientation in the Arterial Adventitia Using Confocal Laser Scanning Microscopy,"
+// Biomechanics and Modeling in Mechanobiology, vol. 11, no. 3-4, pp. 461-473, 2012.
+
+// Conditions of use: You'll be free to use this software for research purposes,
+// but you should not redistribute it without our consent. In addition, we 
+// expect you to include a citation or acknowledgment whenever you present or 
+// publish results that are based on it.
+//
+// History:
+// - Updated (Daniel Sage, 24 January 2011)
+// - Added the Vector field (Daniel Sage, 1 March 2017)
+//
+//==============================================================================
+
+package orientation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Plan of the recursive Gaussian for a sigma and a line length.
+ * 
+ * It holds the values which do not depend on the signal: the pole, the gain, 
+ * and the weights of the mirror initial conditions. A plan is immutable and 
+ * shared by all the threads. The plans are cached, the least recently used 
+ * one is evicted when the cache is full.
+ */
+public class GaussianPlan {
+
+	/** Number of exponential filters of the cascade */
+	public static final int CASCADE = 9;
+
+	/** Maximum number of plans in the cache */
+	private static final int CACHE_SIZE = 64;
+
+	private static final Map<Key, GaussianPlan> cache = new LinkedHashMap<Key, GaussianPlan>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		protected boolean removeEldestEntry(Map.Entry<Key, GaussianPlan> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
+	final double sigma;
+	final int length;
+	final double pole;
+	final double lambda;
+	final int horizon;
+	final double weights[];
+	final double zfirst;
+	final double normalization;
+	final double denominator;
+
+	/**
+	 * Returns the plan of sigma and length, from the cache if possible.
+	 */
+	public static GaussianPlan get(double sigma, int length) {
+		Key key = new Key(sigma, length);
+		synchronized (cache) {
+			GaussianPlan plan = cache.get(key);
+			if (plan == null) {
+				plan = new GaussianPlan(sigma, length);
+				cache.put(key, plan);
+			}
+			return plan;
+		}
+	}
+
+	private GaussianPlan(double sigma, int length) {
+		this.sigma = sigma;
+		this.length = length;
+		this.pole = Gaussian.getPole(sigma);
+		double lambda = 1.0;
+		for (int k=0; k<CASCADE; k++) {
+			lambda = lambda * (1.0 - pole) * (1.0 - 1.0 / pole);
+		}
+		this.lambda = lambda;
+
+		double tolerance = 10e-6;
+		int horizon = 2 + (int)(Math.log(tolerance) / Math.log(Math.abs(pole)));
+		this.horizon = (horizon < length) ? (horizon) : (length);
+		this.weights = new double[Math.max(this.horizon, 0)];
+		this.zfirst = Math.pow(pole, length - 1);
+		double z1 = pole;
+		double zn = zfirst * zfirst;
+		for (int n=1; n<this.horizon-1; n++) {
+			zn = zn / pole;
+			weights[n] = z1 + zn;
+			z1 = z1 * pole;
+		}
+		this.normalization = 1.0 - Math.pow(pole, 2 * length - 2);
+		this.denominator = pole * pole - 1.0;
+	}
+
+	public double getSigma() {
+		return sigma;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	public double getPole() {
+		return pole;
+	}
+
+	/**
+	 * Key of the cache.
+	 */
+	private static class Key {
+		private double sigma;
+		private int length;
+
+		public Key(double sigma, int length) {
+			this.sigma = sigma;
+			this.length = length;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key k = (Key)o;
+			return Double.compare(sigma, k.sigma) == 0 && length == k.length;
+		}
+
+		public int hashCode() {
+			long bits = Double.doubleToLongBits(sigma);
+			return 31 * (int)(bits ^ (bits >>> 32)) + length;
+		}
+	}
+}
@@ -40,141 +40,299 @@
 
 package orientation;
 
+import java.util.ArrayDeque;
+
 import additionaluserinterface.WalkBar;
 import fft.ComplexSignal;
-import fft.FFT2D;
-import imageware.Builder;
+import fft.FFTPlan;
+import fft.FilterBank;
 import imageware.ImageWare;
 import orientationj.WalkBarOrientationJ;
 import riesz.RieszTransform;
 
 public class Gradient implements Runnable {
 
+	/** Minimum number of lines processed by a task */
+	private static final int GRAIN = 16;
+
 	private GroupImage gim;
 	private OrientationParameters params;
 	private WalkBar walk;
+	private Filters filters;
 	
 	public Gradient(WalkBar walk, GroupImage gim, OrientationParameters params) {
+		this(walk, gim, params, null);
+	}
+	
+	/**
+	 * Constructor with the filters of the Fourier or the Riesz gradient 
+	 * given by createFilters(), shared by all the frames of a stack. If they 
+	 * are null, the filters are built by run() for this GroupImage.
+	 */
+	public Gradient(WalkBar walk, GroupImage gim, OrientationParameters params, Filters filters) {
 		if (walk == null)
 			walk = new WalkBarOrientationJ();
 		this.walk = walk;
 		this.gim = gim;
 		this.params = params;
+		this.filters = filters;
 	}
 	
 	public void run() {
+		walk.reset();
+		boolean shared = (filters != null);
+		if (!shared)
+			filters = createFilters(gim.nx, gim.ny, params);
+		try {
+			new StackScheduler(gim.nt, params.framesInFlight, gim.cancellation).run(new StackScheduler.Frame() {
+				public void process(int t) {
+					gradient(t);
+				}
+			});
+		}
+		finally {
+			if (!shared)
+				filters = null;
+		}
+	}
+
+	/**
+	 * Returns the filters of the Fourier or the Riesz gradient of frames 
+	 * of size nx*ny, or null for the other gradients.
+	 */
+	public static Filters createFilters(int nx, int ny, OrientationParameters params) {
+		if (params.gradient == OrientationParameters.GRADIENT_RIESZ)
+			return new Filters(new RieszTransform(nx, ny, 1, false).getFilterBank(), nx);
+		if (params.gradient == OrientationParameters.GRADIENT_FOURIER_DOMAIN)
+			return new Filters(createFourierFilters(nx, ny), nx);
+		return null;
+	}
+
+	/**
+	 * Computes the gradient of a single frame.
+	 */
+	private void gradient(int t) {
 		if (params.gradient == OrientationParameters.GRADIENT_CUBIC_SPLINE)
-			gradientSpline(gim, params.sigmaLoG);
+			gradientSpline(gim, params.sigmaLoG, t);
 		else if (params.gradient == OrientationParameters.GRADIENT_GAUSSIAN)
-			gradientGaussian(gim, 1);
+			gradientGaussian(gim, params.sigmaGradient, t);
 		else if (params.gradient == OrientationParameters.GRADIENT_FOURIER_DOMAIN)
-			gradientFourier(gim);
+			gradientFourier(gim, t);
 		else if (params.gradient == OrientationParameters.GRADIENT_FINITE_DIFF)
-			gradientFiniteDifference(gim, params.sigmaLoG);
+			gradientFiniteDifference(gim, params.sigmaLoG, t);
 		else if (params.gradient == OrientationParameters.GRADIENT_RIESZ)
-			gradientRiesz(gim);
+			gradientRiesz(gim, t);
 	}
 
-	private void gradientRiesz(GroupImage gim) {
-		RieszTransform riesz = new RieszTransform(gim.nx, gim.ny, 1, false);
-		ImageWare slice = Builder.create(gim.nx, gim.ny, 1, ImageWare.FLOAT);
-		for (int t=0; t<gim.nt; t++) {
-			walk.progress("Riesz", t*100.0/gim.nt);
-			gim.source.getXY(0, 0, t, slice);
-			ImageWare channels[] = riesz.analysis(slice);
-			gim.gx.putXY(0, 0, t, channels[0]);
-			gim.gy.putXY(0, 0, t, channels[1]);
+	/**
+	 * Riesz gradient of the frame t, the first-order Riesz channels, 
+	 * computed in buffers checked out of the filters.
+	 */
+	private void gradientRiesz(GroupImage gim, int t) {
+		walk.progress("Riesz", t*100.0/gim.nt);
+		Buffers b = filters.acquire();
+		try {
+			loadFrame(gim, t, b, gim.nx, gim.ny);
+			filters.bank.analysis(b.workspace);
+			storeGradient(gim, t, b, gim.nx);
+		}
+		finally {
+			filters.release(b);
 		}
 	}
 	
-	private void gradientGaussian(GroupImage gim, double sigma) {
-		int size = ((int)Math.ceil(sigma*4.0))*2 + 1;
-		int hsize = size / 2;
-		double kx[][] = new double[size][size];
-		double ky[][] = new double[size][size];
-		double kg[] = new double[size];
-		double kd[] = new double[size];
-		double s2 = sigma*sigma;
-		double cst = 1.0 / Math.sqrt(2.0 * Math.PI * s2);
-		for(int i=-hsize; i<=hsize; i++)
-			kg[i+hsize] = cst * Math.exp(-0.5*i*i/s2);
-		for(int i=-hsize; i<=hsize; i++)
-			kd[i+hsize] = cst * Math.exp(-0.5*i*i/s2) * (-i/s2);
-		for(int j=0; j<size; j++) 
-		for(int i=0; i<size; i++) {
-			ky[i][j] = kg[i] * kd[j];
-			kx[i][j] = kd[i] * kg[j];
+	/**
+	 * Gaussian-derivative gradient of the frame t.
+	 * 
+	 * Up to the smoothings of the recursive filter, the frame is correlated 
+	 * with the sampled derivative of the Gaussian along one axis and the 
+	 * sampled Gaussian along the other, the separable form of the 2D kernel 
+	 * of radius 4 sigma. For the large sigma, the frame is smoothed by the 
+	 * recursive filter then differentiated by central differences. The 
+	 * boundary conditions are mirroring.
+	 */
+	private void gradientGaussian(final GroupImage gim, double sigma, final int t) {
+		final int nx = gim.nx;
+		final int ny = gim.ny;
+		final double dy[] = new double[nx*ny];
+		walk.progress("Gradient", t*100.0/gim.nt);
+
+		ComputeScheduler.parallel(ny, GRAIN, new ComputeScheduler.Range() {
+			public void process(int lo, int hi) {
+				double row[] = new double[nx];
+				for (int y=lo; y<hi; y++) {
+					gim.source.getX(0, y, t, row);
+					System.arraycopy(row, 0, dy, y*nx, nx);
+				}
+			}
+		});
+		final double dx[] = dy.clone();
+		final double sign;
+		if (Convolution.select(nx, ny, sigma, 1, sigma, 0) == Convolution.METHOD_IIR) {
+			Convolution.filter(dx, nx, ny, sigma, 1, sigma, 0, gim.cancellation);
+			Convolution.filter(dy, nx, ny, sigma, 0, sigma, 1, gim.cancellation);
+			sign = -1.0;
 		}
-		
-		double w = 100.0/(gim.nt*gim.nx);
-		double block[][] = new double[size][size];
-		for(int t=0; t<gim.nt; t++) {
-			for (int x=0; x<gim.nx; x++) {
-				walk.progress("Gradient", (t*gim.nx+x)*w);
-				for (int y=0; y<gim.ny; y++) {
-					gim.source.getNeighborhoodXY(x, y, t, block, ImageWare.MIRROR);
-					double sx = 0.0;
-					double sy = 0.0;
-					for(int j=0; j<size; j++) 
-					for(int i=0; i<size; i++) {
-						sx += block[i][j] * kx[i][j];
-						sy += block[i][j] * ky[i][j];
+		else {
+			int hsize = (int)Math.ceil(sigma*4.0);
+			double kg[] = new double[2*hsize + 1];
+			double kd[] = new double[2*hsize + 1];
+			double s2 = sigma*sigma;
+			double cst = 1.0 / Math.sqrt(2.0 * Math.PI * s2);
+			for (int i=-hsize; i<=hsize; i++) {
+				kg[i+hsize] = cst * Math.exp(-0.5*i*i/s2);
+				kd[i+hsize] = kg[i+hsize] * (-i/s2);
+			}
+			Convolution.filter(dx, nx, ny, kd, kg, gim.cancellation);
+			Convolution.filter(dy, nx, ny, kg, kd, gim.cancellation);
+			sign = 1.0;
+		}
+
+		ComputeScheduler.parallel(ny, GRAIN, new ComputeScheduler.Range() {
+			public void process(int lo, int hi) {
+				double rowx[] = new double[nx];
+				double rowy[] = new double[nx];
+				for (int y=lo; y<hi; y++) {
+					gim.cancellation.check();
+					for (int x=0, k=y*nx; x<nx; x++, k++) {
+						rowx[x] = sign * dx[k];
+						rowy[x] = sign * dy[k];
 					}
-					gim.gx.putPixel(x, y, t, sx);
-					gim.gy.putPixel(x, y, t, sy);
+					gim.gx.putX(0, y, t, rowx);
+					gim.gy.putX(0, y, t, rowy);
 				}
 			}
+		});
+	}
+
+	/**
+	 * Filters of the Fourier gradient, built once for the whole stack.
+	 * 
+	 * The frame is padded to an even size, the derivative filters i*w/2 are 
+	 * set to zero at the Nyquist frequency to remain Hermitian, then the 
+	 * inverse is real.
+	 */
+	private static FilterBank createFourierFilters(int nx, int ny) {
+		int mx = getFourierSize(nx);
+		int my = getFourierSize(ny);
+		int hx = mx/2 + 1;
+		double rx = Math.PI / mx;
+		double ry = Math.PI / my;
+		ComplexSignal filterx = new ComplexSignal(hx, my);
+		ComplexSignal filtery = new ComplexSignal(hx, my);
+		for (int wy=0; wy<my; wy++)
+		for (int wx=0; wx<hx; wx++) {
+			filterx.imag[wx+hx*wy] = (wx == mx/2 ? 0.0 : rx*wx);
+			filtery.imag[wx+hx*wy] = (wy == my/2 ? 0.0 : ry*(wy < my/2 ? wy : wy-my));
 		}
+		return new FilterBank(mx, my, new ComplexSignal[] {filterx, filtery});
 	}
-	
-	private void gradientFourier(GroupImage gim) {
-		
-		int mx = (gim.nx % 2 == 0 ? gim.nx : gim.nx+1);
-		int my = (gim.ny % 2 == 0 ? gim.ny : gim.ny+1);
-		for (int t=0; t<gim.nt; t++) {
 
-			// Generate the filters in x and y
-			ComplexSignal filterx = new ComplexSignal(mx, my);
-			ComplexSignal filtery = new ComplexSignal(mx, my);
-			double rx = Math.PI / mx;
-			double ry = Math.PI / my;
-			double pix[] = new double[mx*my];
-		
-			for (int wx=0; wx<mx; wx++)
-			for (int wy=0; wy<my; wy++) {
-				filterx.imag[wx+mx*wy] = rx*(wx-mx/2);
-				filtery.imag[wx+my*wy] = ry*(wy-my/2);
-			}
-			walk.progress("Fourier", t*100.0/gim.nt);
+	/**
+	 * Padded size of the Fourier gradient: the smallest even size 
+	 * 2^a*3^b*5^c*7^d larger than or equal to n.
+	 */
+	private static int getFourierSize(int n) {
+		return 2 * FFTPlan.getSmoothSize((n+1)/2);
+	}
 
-			// generate the source signal
-			for (int x=0; x<gim.nx; x++)
-			for (int y=0; y<gim.ny; y++)
-				pix[x+y*mx] = gim.source.getPixel(x, y, t);
-			ComplexSignal sSource = new ComplexSignal(pix, mx, my);
-			ComplexSignal fSource = FFT2D.transform(sSource);
-			fSource.shift();
-		
-			// derivate in x
-			filterx.multiply(fSource);
-			filterx.shift();
-			ComplexSignal is_x = FFT2D.inverse(filterx);
+	/**
+	 * Fourier gradient of the frame t, computed in buffers checked out of 
+	 * the filters.
+	 * 
+	 * The frame is extended by mirror to the padded size, and the gradient 
+	 * is cropped to the frame.
+	 */
+	private void gradientFourier(GroupImage gim, int t) {
+		walk.progress("Fourier", t*100.0/gim.nt);
+		Buffers b = filters.acquire();
+		try {
+			loadFrame(gim, t, b, getFourierSize(gim.nx), getFourierSize(gim.ny));
+			filters.bank.analysis(b.workspace);
+			storeGradient(gim, t, b, getFourierSize(gim.nx));
+		}
+		finally {
+			filters.release(b);
+		}
+	}
 
-			// derivate in y
-			filtery.multiply(fSource);
-			filtery.shift();
-			ComplexSignal is_y = FFT2D.inverse(filtery);
-			// create the gradient
-			for (int x=0; x<gim.nx; x++)
-			for (int y=0; y<gim.ny; y++) {
-				gim.gx.putPixel(x, y, t, is_x.real[y*mx+x]);
-				gim.gy.putPixel(x, y, t, is_y.real[y*mx+x]);
-			}
-			
+	/**
+	 * Copies the frame t into the image [mx*my] of the workspace, mirrored 
+	 * in the padding.
+	 */
+	private static void loadFrame(GroupImage gim, int t, Buffers b, int mx, int my) {
+		double pix[] = b.workspace.image;
+		for (int y=0; y<gim.ny; y++) {
+			gim.source.getX(0, y, t, b.row);
+			for (int x=0; x<mx; x++)
+				pix[x+y*mx] = b.row[RecursiveGaussian.mirror(x, gim.nx)];
+		}
+		for (int y=gim.ny; y<my; y++)
+			System.arraycopy(pix, RecursiveGaussian.mirror(y, gim.ny)*mx, pix, y*mx, mx);
+	}
+
+	/**
+	 * Crops the two channels [mx*my] of the workspace into the gradient of 
+	 * the frame t.
+	 */
+	private static void storeGradient(GroupImage gim, int t, Buffers b, int mx) {
+		float gx[] = gim.gx.getSliceFloat(t);
+		float gy[] = gim.gy.getSliceFloat(t);
+		double channels[][] = b.workspace.channels;
+		for (int y=0; y<gim.ny; y++)
+		for (int x=0, k=y*gim.nx; x<gim.nx; x++, k++) {
+			gx[k] = (float)channels[0][x+y*mx];
+			gy[k] = (float)channels[1][x+y*mx];
+		}
+	}
+
+	/**
+	 * Filter bank of the Fourier or the Riesz gradient, built once for all 
+	 * the frames of a stack, with a pool of working buffers. The bank is not 
+	 * modified, the frames share it from several threads.
+	 * 
+	 * A frame checks out a set of buffers and returns it when it is done. A 
+	 * set is only allocated when the pool is empty, so there are never more 
+	 * sets than frames in flight (framesInFlight), whatever the number of 
+	 * threads of the pool. The buffers are released with the filters at the 
+	 * end of the run.
+	 */
+	public static class Filters {
+		private FilterBank bank;
+		private int nx;
+		private ArrayDeque<Buffers> pool = new ArrayDeque<Buffers>();
+
+		private Filters(FilterBank bank, int nx) {
+			this.bank = bank;
+			this.nx = nx;
+		}
+
+		private synchronized Buffers acquire() {
+			if (pool.isEmpty())
+				return new Buffers(bank.createWorkspace(), nx);
+			return pool.pop();
+		}
+
+		private synchronized void release(Buffers buffers) {
+			pool.push(buffers);
+		}
+	}
+
+	/**
+	 * Working buffers of a frame: the workspace of the filter bank and a 
+	 * row of the source.
+	 */
+	private static class Buffers {
+		private FilterBank.Workspace workspace;
+		private double row[];
+
+		public Buffers(FilterBank.Workspace workspace, int nx) {
+			this.workspace = workspace;
+			this.row = new double[nx];
 		}
 	}
 
-	private void gradientSpline(GroupImage gim, double sigmaLoG) {
+	private void gradientSpline(GroupImage gim, double sigmaLoG, int t) {
 		
 		int nx = gim.nx;
 		int ny = gim.ny;
@@ -190,60 +348,63 @@ public class Gradient implements Runnable {
 		double sp[] = getQuadraticSpline(0.5);
 		double neighbor[] = new double[3];
 		double v = 0;
-		walk.reset();
 		double w = 1000.0/(nt*(nx+ny));
 
-		for(int t=0; t<nt; t++) {
-			ImageWare log= null;
-			if (sigmaLoG > 0) {
-				log = LaplacianOfGaussian.run(gim.source, sigmaLoG, sigmaLoG);
-			}
-			else {
-				log = gim.source.convert(ImageWare.FLOAT);
-			}
-			
-			for(int y=0; y<ny; y++) {
-				walk.progress("Gradient", (t*(ny+nx)+y)*w);
-				log.getX(0, y, t, rowin);
-				CubicSpline.doSymmetricalExponentialFilter(rowin, rowck, c0, a);
-				int x;
-				for(x=2; x<nx-1; x++) {
-					neighbor[0] = rowck[x-2] - rowck[x-1];
-					neighbor[1] = rowck[x-1] - rowck[x];
-					neighbor[2] = rowck[x] - rowck[x+1];
-					v = neighbor[0] * sp[0] + neighbor[1] * sp[1] + neighbor[2] * sp[2];
-					gim.gx.putPixel(x, y, t, v);
-				}
-				x = 1;
-				neighbor[0] = rowck[1] - rowck[x-1];
+		ImageWare log = prefilter(gim, sigmaLoG, t);
+		
+		for(int y=0; y<ny; y++) {
+			gim.cancellation.check();
+			walk.progress("Gradient", (t*(ny+nx)+y)*w);
+			log.getX(0, y, 0, rowin);
+			CubicSpline.doSymmetricalExponentialFilter(rowin, rowck, c0, a);
+			int x;
+			for(x=2; x<nx-1; x++) {
+				neighbor[0] = rowck[x-2] - rowck[x-1];
 				neighbor[1] = rowck[x-1] - rowck[x];
 				neighbor[2] = rowck[x] - rowck[x+1];
 				v = neighbor[0] * sp[0] + neighbor[1] * sp[1] + neighbor[2] * sp[2];
 				gim.gx.putPixel(x, y, t, v);
 			}
-			
-			for(int x=0; x<nx; x++) {
-				walk.progress("Gradient", (t*(ny+nx)+x+ny)*w);
-				log.getY(x, 0, t, colin);
-				CubicSpline.doSymmetricalExponentialFilter(colin, colck, c0, a);
-				int y;
-				for(y=2; y<ny-1; y++) {
-					neighbor[0] = colck[y-2] - colck[y-1];
-					neighbor[1] = colck[y-1] - colck[y];
-					neighbor[2] = colck[y] - colck[y+1];
-					v = neighbor[0] * sp[0] + neighbor[1] * sp[1] + neighbor[2] * sp[2];
-					gim.gy.putPixel(x, y, t, v);
-				}
-				y = 1;
-				neighbor[0] = colck[1] - colck[y-1];
+			x = 1;
+			neighbor[0] = rowck[1] - rowck[x-1];
+			neighbor[1] = rowck[x-1] - rowck[x];
+			neighbor[2] = rowck[x] - rowck[x+1];
+			v = neighbor[0] * sp[0] + neighbor[1] * sp[1] + neighbor[2] * sp[2];
+			gim.gx.putPixel(x, y, t, v);
+		}
+		
+		for(int x=0; x<nx; x++) {
+			gim.cancellation.check();
+			walk.progress("Gradient", (t*(ny+nx)+x+ny)*w);
+			log.getY(x, 0, 0, colin);
+			CubicSpline.doSymmetricalExponentialFilter(colin, colck, c0, a);
+			int y;
+			for(y=2; y<ny-1; y++) {
+				neighbor[0] = colck[y-2] - colck[y-1];
 				neighbor[1] = colck[y-1] - colck[y];
 				neighbor[2] = colck[y] - colck[y+1];
 				v = neighbor[0] * sp[0] + neighbor[1] * sp[1] + neighbor[2] * sp[2];
 				gim.gy.putPixel(x, y, t, v);
 			}
+			y = 1;
+			neighbor[0] = colck[1] - colck[y-1];
+			neighbor[1] = colck[y-1] - colck[y];
+			neighbor[2] = colck[y] - colck[y+1];
+			v = neighbor[0] * sp[0] + neighbor[1] * sp[1] + neighbor[2] * sp[2];
+			gim.gy.putPixel(x, y, t, v);
 		}
 	}
 
+	/**
+	 * Prefilters the frame t of the source by a Laplacian of Gaussian.
+	 * 
+	 * Returns a single-slice image which lives only as long as the gradient 
+	 * of the frame t needs it. 
+	 */
+	private ImageWare prefilter(GroupImage gim, double sigmaLoG, int t) {
+		return LaplacianOfGaussian.run(gim.source, t, sigmaLoG, sigmaLoG, gim.cancellation);
+	}
+
 	/**
 	*/
 	private double[] getQuadraticSpline(double t) {
@@ -254,34 +415,27 @@ public class Gradient implements Runnable {
 		return v;
 	}
 	
-	private void gradientFiniteDifference(GroupImage gim, double sigmaLoG) {
+	private void gradientFiniteDifference(GroupImage gim, double sigmaLoG, int t) {
 		int nx = gim.nx;
 		int ny = gim.ny;
-		int nt = gim.nt;
 		double rowin[] = new double[nx];
 		double rowou[] = new double[nx];
 		double colin[] = new double[ny];
 		double colou[] = new double[ny];
-		for(int t=0; t<nt; t++) {
-			ImageWare log = null; 
-			if (sigmaLoG > 0) {
-				log = LaplacianOfGaussian.run(gim.source, sigmaLoG, sigmaLoG);
-			}
-			else {
-				log = gim.source.convert(ImageWare.FLOAT);
-			}
-			for(int y=0; y<ny; y++) {
-				log.getX(0, y, t, rowin);
-				for(int x=1; x<nx-1; x++)
-					rowou[x] = rowin[x-1] -  rowin[x+1];
-				gim.gx.putX(0, y, t, rowou);
-			}
-			for(int x=0; x<nx; x++) {
-				log.getY(x, 0, t, colin);
-				for(int y=1; y<ny-1; y++)
-					colou[y] = -colin[y+1] +  colin[y-1];
-				gim.gy.putY(x, 0, t, colou);
-			}
+		ImageWare log = prefilter(gim, sigmaLoG, t);
+		for(int y=0; y<ny; y++) {
+			gim.cancellation.check();
+			log.getX(0, y, 0, rowin);
+			for(int x=1; x<nx-1; x++)
+				rowou[x] = rowin[x-1] -  rowin[x+1];
+			gim.gx.putX(0, y, t, rowou);
+		}
+		for(int x=0; x<nx; x++) {
+			gim.cancellation.check();
+			log.getY(x, 0, 0, colin);
+			for(int y=1; y<ny-1; y++)
+				colou[y] = -colin[y+1] +  colin[y-1];
+			gim.gy.putY(x, 0, t, colou);
 		}
 	}
 
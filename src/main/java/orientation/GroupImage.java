@@ -80,21 +80,148 @@ public class GroupImage {
 	public int ny;
 	public int nt;
 
+	public Cancellation cancellation = new Cancellation();
+
 	private WalkBar walk;
+	private OrientationParameters params;
+	
+	/** Feature nodes to materialise, indexed by the features of OrientationParameters */
+	private boolean required[] = new boolean[OrientationParameters.NB_FEATURES];
 	
+	/**
+	 * Constructor of a single-frame working image, the gradient is always kept.
+	 */
 	public GroupImage(WalkBar walk, ImageProcessor ip, OrientationParameters params) {
-		this.walk = walk;
-		this.source = Builder.create(new ImagePlus("", ip));
-		create(params);
+		this(walk, Builder.create(new ImagePlus("", ip)), params, true);
 	}
 	
 	public GroupImage(WalkBar walk, ImageWare source, OrientationParameters params) {
+		this(walk, source, params, false);
+	}
+	
+	/**
+	 * Constructor, only the features required by the views and by the 
+	 * service are allocated. The gradient (or the Hessian) is allocated if 
+	 * keepGradient is true or if a view needs it.
+	 */
+	public GroupImage(WalkBar walk, ImageWare source, OrientationParameters params, boolean keepGradient) {
 		this.walk = walk;
 		this.source = source;
+		this.params = params;
+		require(params);
+		if (keepGradient) {
+			required[OrientationParameters.GRADIENT_HORIZONTAL] = true;
+			required[OrientationParameters.GRADIENT_VERTICAL] = true;
+		}
 		create(params);
 	}
+	
+	/**
+	 * Returns true if the feature node is materialised.
+	 */
+	public boolean isRequired(int feature) {
+		return required[feature];
+	}
+	
+	/**
+	 * Returns true if the gradient (or the Hessian) is kept for the whole stack.
+	 */
+	public boolean isGradientKept() {
+		return gx != null || hxx != null;
+	}
+	
+	/**
+	 * Returns true if at least one feature of the structure tensor is required.
+	 */
+	public boolean isTensorRequired() {
+		return energy != null || coherency != null || orientation != null || harris != null;
+	}
+	
+	/**
+	 * Returns a single-frame working image of the frame t, with its own 
+	 * gradient and the same feature nodes.
+	 */
+	public GroupImage getFrame(int t) {
+		ImageWare frame = Builder.create(nx, ny, 1, source.getType());
+		source.getXY(0, 0, t, frame);
+		GroupImage gframe = new GroupImage(walk, frame, params, true);
+		gframe.cancellation = cancellation;
+		return gframe;
+	}
+	
+	/**
+	 * Copies the tensor features of a single-frame working image into the frame t.
+	 */
+	public void putFrame(int t, GroupImage frame) {
+		putFrame(t, energy, frame.energy);
+		putFrame(t, coherency, frame.coherency);
+		putFrame(t, orientation, frame.orientation);
+		putFrame(t, harris, frame.harris);
+	}
+	
+	private void putFrame(int t, ImageWare stack, ImageWare frame) {
+		if (stack != null && frame != null)
+			System.arraycopy(frame.getSliceFloat(0), 0, stack.getSliceFloat(t), 0, nx*ny);
+	}
+	
+	/**
+	 * Declares the feature nodes required by the enabled views and by the 
+	 * service. The gradient nodes go by pair.
+	 */
+	private void require(OrientationParameters params) {
+		boolean view[] = params.view;
+		if (params.isServiceAnalysis())
+			if (view[OrientationParameters.GRADIENT_HORIZONTAL] || view[OrientationParameters.GRADIENT_VERTICAL])
+				requireChannel("Gradient-X");
+		for (int feature = OrientationParameters.TENSOR_ENERGY; feature <= OrientationParameters.TENSOR_COHERENCY; feature++)
+			if (view[feature])
+				required[feature] = true;
+		if (params.isServiceHarris()) {
+			required[OrientationParameters.HARRIS] = true;
+		}
+		else if (view[OrientationParameters.SURVEY]) {
+			requireChannel(params.featureHue);
+			requireChannel(params.featureSat);
+			requireChannel(params.featureBri);
+		}
+		// The vector overlays are drawn on the brightness channel
+		if (params.isServiceDirections() || params.isServiceVectorField())
+			requireChannel(params.featureBri);
+		boolean distribution = false;
+		for (int feature = OrientationParameters.DIST_MASK; feature <= OrientationParameters.DIST_HISTO; feature++)
+			distribution |= view[feature];
+		if (distribution || params.isServiceDistribution() || params.isServiceDirections() || params.isServiceVectorField()) {
+			required[OrientationParameters.TENSOR_ENERGY] = true;
+			required[OrientationParameters.TENSOR_ORIENTATION] = true;
+			required[OrientationParameters.TENSOR_COHERENCY] = true;
+		}
+	}
+	
+	private void requireChannel(String name) {
+		if (name.equals("Gradient-X") || name.equals("Gradient-Y")) {
+			required[OrientationParameters.GRADIENT_HORIZONTAL] = true;
+			required[OrientationParameters.GRADIENT_VERTICAL] = true;
+		}
+		else if (name.equals("Orientation"))
+			required[OrientationParameters.TENSOR_ORIENTATION] = true;
+		else if (name.equals("Coherency"))
+			required[OrientationParameters.TENSOR_COHERENCY] = true;
+		else if (name.equals("Energy"))
+			required[OrientationParameters.TENSOR_ENERGY] = true;
+	}
 
 	public static ImageWare getCurrentImage() {
+		ImagePlus imp = getCurrentImagePlus();
+		if (imp == null)
+			return null;
+		return Builder.create(imp);
+	}
+	
+	/**
+	 * Returns the current ImagePlus without reading its pixels, the stack 
+	 * can be virtual.
+	 */
+	public static ImagePlus getCurrentImagePlus() {
 		ImagePlus imp = WindowManager.getCurrentImage();
 		if (imp == null) {
 			IJ.error("No open image.");
@@ -104,7 +231,7 @@ public class GroupImage {
 			IJ.error("Open process 8-bits, 16-bits, or 32-bits image.");
 			return null;
 		}
-		return Builder.create(imp);
+		return imp;
 	}
 	
 	public ImagePlus getImagePlus(String title) {
@@ -117,34 +244,32 @@ public class GroupImage {
 		nt = source.getSizeZ();
 		long kb = (nx*ny*nt*4) / 1024;
 		walk.progress("Alloction", 10);
-		if (params.gradient == OrientationParameters.HESSIAN) {
-			hxx = allocate("Hessian Horizontal", kb);
-			walk.progress("Alloc HXX", 30);
-			hyy = allocate("Hessian Vertical", kb);
-			walk.progress("Alloc HYY", 40);
-			hxy = allocate("Hessian Cross Term", kb);
-			walk.progress("Alloc HXY", 60);
-		}
-		else {
-			gx = allocate("Gradient Horizontal", kb);
-			walk.progress("Alloc GX", 40);
-			gy = allocate("Gradient Vertical", kb);
-			walk.progress("Alloc GY", 60);
-		}
-		energy	= allocate("Tensor Energy", kb);
+		if (required[OrientationParameters.GRADIENT_HORIZONTAL]) {
+			if (params.gradient == OrientationParameters.HESSIAN) {
+				hxx = allocate("Hessian Horizontal", kb);
+				walk.progress("Alloc HXX", 30);
+				hyy = allocate("Hessian Vertical", kb);
+				walk.progress("Alloc HYY", 40);
+				hxy = allocate("Hessian Cross Term", kb);
+				walk.progress("Alloc HXY", 60);
+			}
+			else {
+				gx = allocate("Gradient Horizontal", kb);
+				walk.progress("Alloc GX", 40);
+				gy = allocate("Gradient Vertical", kb);
+				walk.progress("Alloc GY", 60);
+			}
+		}
+		if (required[OrientationParameters.TENSOR_ENERGY])
+			energy = allocate("Tensor Energy", kb);
 		walk.progress("Alloc E", 70);
-		coherency 	= allocate("Coherency", kb);
+		if (required[OrientationParameters.TENSOR_COHERENCY])
+			coherency = allocate("Coherency", kb);
 		walk.progress("Alloc Coh", 80);
-		orientation = allocate("Orientation", kb);
-		
-		if (params.isServiceHarris()) 
+		if (required[OrientationParameters.TENSOR_ORIENTATION])
+			orientation = allocate("Orientation", kb);
+		if (required[OrientationParameters.HARRIS]) 
 			harris = allocate("Harris Index", kb);
-		
-		if (params.isServiceDistribution()) {
-			selectedMask = allocate("Selected Mask", kb);
-			selectedOrientation = allocate("Selected Orientation", kb);
-			selectedEnergy = allocate("Selected Energy", kb);
-		}
 		walk.progress("Alloc Ori", 90);
 	}
 	
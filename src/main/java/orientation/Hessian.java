@@ -42,108 +42,111 @@ package orientation;
 
 import additionaluserinterface.WalkBar;
 
+/**
+ * Hessian of the source by a bank of separable 3-taps filters, or by the 
+ * Gaussian second derivatives when sigmaHessian is positive.
+ * 
+ * The filters of the three components run through Convolution, the lines 
+ * in parallel on the shared scheduler, and the frames are processed in 
+ * parallel. The boundary conditions are mirroring.
+ */
 public class Hessian implements Runnable {
 
+	/** Minimum number of rows processed by a task */
+	private static final int GRAIN = 16;
+
+	private static final double SECOND[]	= {1.0/6.0, -2.0/6.0, 1.0/6.0};
+	private static final double SMOOTH[]	= {1.0, 4.0, 1.0};
+	private static final double FIRST[]	= {1.0/2.0, 0, -1.0/2.0};
+
 	private GroupImage gim;
 	private WalkBar walk;
+	private OrientationParameters params;
 	
 	public Hessian(WalkBar walk, GroupImage gim, OrientationParameters params) {
 		this.walk = walk;
 		this.gim = gim;
+		this.params = params;
 	}
 	
 	public void run() {
 		walk.reset();
-		for(int t=0; t<gim.nt; t++) {
-			walk.progress("Hessian", (t+1)*100.0/gim.nt);
-			hessianXX(gim, t);
-			hessianYY(gim, t);
-			hessianXY(gim, t);
-		}
+		new StackScheduler(gim.nt, params.framesInFlight, gim.cancellation).run(new StackScheduler.Frame() {
+			public void process(int t) {
+				walk.progress("Hessian", (t+1)*100.0/gim.nt);
+				if (params.sigmaHessian > 0)
+					filterGaussian(t, params.sigmaHessian);
+				else
+					filterBank(t);
+			}
+		});
 	}
 	
-	private void hessianXX(GroupImage gim, int t) {
+	/**
+	 * Computes hxx, hyy and hxy of the frame t.
+	 * Along y the kernels are SECOND, SMOOTH and FIRST, along x they are 
+	 * SMOOTH, SECOND and FIRST.
+	 */
+	private void filterBank(final int t) {
 		int nx = gim.nx;
 		int ny = gim.ny;
-		double kernelX[] = {1.0/6.0, -2.0/6.0, 1.0/6.0};
-		double kernelY[] = {1.0, 4, 1.0};
-
-		double colin[] = new double[ny];
-		double colou[] = new double[ny];
-		for(int x=0; x<nx; x++) {
-			gim.source.getY(x, 0, t, colin);
-			convolve3taps(colin, colou, kernelX);
-			gim.hxx.putY(x, 0, t, colou);
-		}
-		
-		double rowin[] = new double[nx];
-		double rowou[] = new double[nx];
-		for(int y=0; y<ny; y++) {
-			gim.hxx.getX(0, y, t, rowin);
-			convolve3taps(rowin, rowou, kernelY);
-			gim.hxx.putX(0, y, t, rowou);
-		}
+		double dxx[] = load(t);
+		double dyy[] = dxx.clone();
+		double dxy[] = dxx.clone();
+		Convolution.filter(dxx, nx, ny, SMOOTH, SECOND, gim.cancellation);
+		Convolution.filter(dyy, nx, ny, SECOND, SMOOTH, gim.cancellation);
+		Convolution.filter(dxy, nx, ny, FIRST, FIRST, gim.cancellation);
+		store(t, dxx, dyy, dxy);
 	}
 	
-	private void hessianXY(GroupImage gim, int t) {
+	/**
+	 * Computes hxx, hyy and hxy of the frame t by the Gaussian derivatives 
+	 * at the scale sigma, with the axes of filterBank(): hxx is the second 
+	 * derivative along y and hyy along x. The Convolution selects the 
+	 * cheapest method.
+	 */
+	private void filterGaussian(final int t, double sigma) {
 		int nx = gim.nx;
 		int ny = gim.ny;
-		double kernelX[] = {1.0/2.0, 0, -1.0/2.0};
-		double kernelY[] = {1.0/2.0, 0, -1.0/2.0};
-
-		double colin[] = new double[ny];
-		double colou[] = new double[ny];
-		for(int x=0; x<nx; x++) {
-			gim.source.getY(x, 0, 0, colin);
-			convolve3taps(colin, colou, kernelX);
-			gim.hxy.putY(x, 0, 0, colou);
-		}
-		
-		double rowin[] = new double[nx];
-		double rowou[] = new double[nx];
-		for(int y=0; y<ny; y++) {
-			gim.hxy.getX(0, y, t, rowin);
-			convolve3taps(rowin, rowou, kernelY);
-			gim.hxy.putX(0, y, t, rowou);
-		}
+		double dyy[] = load(t);
+		double dxx[] = dyy.clone();
+		double dxy[] = dyy.clone();
+		Convolution.filter(dyy, nx, ny, sigma, 0, sigma, 2, gim.cancellation);
+		Convolution.filter(dxx, nx, ny, sigma, 2, sigma, 0, gim.cancellation);
+		Convolution.filter(dxy, nx, ny, sigma, 1, sigma, 1, gim.cancellation);
+		store(t, dyy, dxx, dxy);
 	}
-	
-	private void hessianYY(GroupImage gim, int t) {
-		int nx = gim.nx;
-		int ny = gim.ny;
-		double kernelX[] = {1.0, 4.0, 1.0};
-		double kernelY[] = {1.0/6.0, -2.0/6.0, 1.0/6.0};
 
-		double colin[] = new double[ny];
-		double colou[] = new double[ny];
-		for(int x=0; x<nx; x++) {
-			gim.source.getY(x, 0, t, colin);
-			convolve3taps(colin, colou, kernelX);
-			gim.hyy.putY(x, 0, t, colou);
-		}
-		
-		double rowin[] = new double[nx];
-		double rowou[] = new double[nx];
-		for(int y=0; y<ny; y++) {
-			gim.hyy.getX(0, y, t, rowin);
-			convolve3taps(rowin, rowou, kernelY);
-			gim.hyy.putX(0, y, t, rowou);
-		}
+	/**
+	 * Returns the frame t of the source, stored row-major.
+	 */
+	private double[] load(final int t) {
+		final int nx = gim.nx;
+		final double data[] = new double[nx*gim.ny];
+		ComputeScheduler.parallel(gim.ny, GRAIN, new ComputeScheduler.Range() {
+			public void process(int lo, int hi) {
+				double row[] = new double[nx];
+				for (int y=lo; y<hi; y++) {
+					gim.source.getX(0, y, t, row);
+					System.arraycopy(row, 0, data, y*nx, nx);
+				}
+			}
+		});
+		return data;
 	}
 	
 	/**
-	 * Convolves a 1D signal to a kernel with mirror boundary conditions. 
-	 * 
-	 * Be careful: 
-	 * 1) the kernel should be a 3-taps array.
-	 * 2) the in and the out should be allocated with the same size.
+	 * Stores hxx, hyy and hxy into the frame t.
 	 */
-	private void convolve3taps(double[] in, double out[], double[] kernel) {
-		int n = in.length;
-		out[0] = in[1] * kernel[0] + in[0] * kernel[1] + in[1] * kernel[2];
-		for(int k=1; k<n-1; k++)
-			out[k] = in[k-1] * kernel[0] + in[k] * kernel[1] + in[k+1] * kernel[2];
-		out[n-1] = in[n-2] * kernel[0] + in[n-1] * kernel[1] + in[n-2] * kernel[2];
+	private void store(int t, double dxx[], double dyy[], double dxy[]) {
+		float hxx[] = gim.hxx.getSliceFloat(t);
+		float hyy[] = gim.hyy.getSliceFloat(t);
+		float hxy[] = gim.hxy.getSliceFloat(t);
+		for (int k=0; k<dxx.length; k++) {
+			hxx[k] = (float)dxx[k];
+			hyy[k] = (float)dyy[k];
+			hxy[k] = (float)dxy[k];
+		}
 	}
 	
 }
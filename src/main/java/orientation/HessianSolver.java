@@ -0,0 +1,324 @@
+//==============================================================================
+//
+// Project: Directional Image Analysis - OrientationJ plugin
+// 
+// Author: Daniel Sage
+// 
+// Organization: Biomedical Imaging Group (BIG)
+// Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+//
+// Information: 
+// OrientationJ: http://bigwww.epfl.ch/demo/orientation/
+// MonogenicJ: http://bigwww.epfl.ch/demo/monogenic/
+//  
+//
+// Reference on methods and plugin
+// Z. Püspöki, M. Storath, D. Sage, M. Unser
+// "Transforms and Operators for Directional Bioimage Analysis: A Survey," 
+// Advances in Anatomy, Embryology and Cell Biology, vol. 219, Focus on Bio-Image Informatics, 
+// Springer International Publishing, ch. 3, pp. 69-93, May 21, 2016.
+//
+// Reference on applications
+// E. Fonck, G.G. Feigl, J. Fasel, D. Sage, M. Unser, D.A. Ruefenacht, N. Stergiopulos 
+// "Effect of Aging on Elastin Functionality in Human Cerebral Arteries,"
+// Stroke, vol. 40, no. 7, pp. 2552-2556, July 2009.
+//
+// R. Rezakhaniha, A. Agianniotis, J.T.C. Schrauwen, A. Griffa, D. Sage, C.V.C. Bouten, F.N. van de Vosse, M. Unser, N. Stergiopulos
+// "Experimental Investigation of Collagen Waviness and Orientation in the Arterial Adventitia Using Confocal Laser Scanning Microscopy,"
+// Biomechanics and Modeling in Mechanobiology, vol. 11, no. 3-4, pp. 461-473, 2012.
+
+// Conditions of use: You'll be free to use this software for research purposes,
+// but you should not redistribute it without our consent. In addition, we 
+// expect you to include a citation or acknowledgment whenever you present or 
+// publish results that are based on it.
+//
+// History:
+// - Updated (Daniel Sage, 24 January 2011)
+// - Added the Vector field (Daniel Sage, 1 March 2017)
+//
+//==============================================================================
+
+package orientation;
+
+/**
+ * Closed-form solver of the orientation of the Hessian structure tensor.
+ * 
+ * The energy of the tensor in the direction (cos a, sin a) is the quartic 
+ * form E(a) = p0 c^4 + p1 c^3 s + p2 c^2 s^2 + p3 c s^3 + p4 s^4, written 
+ * E(a) = A0 + A2 cos 2a + B2 sin 2a + A4 cos 4a + B4 sin 4a. 
+ * Its extrema are the real roots of a quartic polynomial in tan(a - r), 
+ * solved analytically (Ferrari) and refined by two Newton steps. 
+ * 
+ * The leading and constant coefficients of this polynomial are E'(r + pi/2) 
+ * and E'(r). For an axis-aligned structure both vanish at r = 0 and the 
+ * roots near 0 and near the infinity are lost by the division. The angle r 
+ * is chosen among 16 directions so that the smaller of the two is the 
+ * largest, and the larger one leads, which is solving for cot instead of 
+ * tan. The cost per pixel does not depend on the image content. 
+ * 
+ * The solver does not allocate after its construction. An instance is not 
+ * shared: each thread uses its own instance.
+ */
+public class HessianSolver {
+
+	/** Number of candidate angles r in [0, pi/2[ */
+	private static final int ROTATIONS = 8;
+	private static final double COS2[] = new double[ROTATIONS];
+	private static final double SIN2[] = new double[ROTATIONS];
+	private static final double COS4[] = new double[ROTATIONS];
+	private static final double SIN4[] = new double[ROTATIONS];
+
+	static {
+		for (int k = 0; k < ROTATIONS; k++) {
+			double r = 0.5 * Math.PI * k / ROTATIONS;
+			COS2[k] = Math.cos(2.0 * r);
+			SIN2[k] = Math.sin(2.0 * r);
+			COS4[k] = Math.cos(4.0 * r);
+			SIN4[k] = Math.sin(4.0 * r);
+		}
+	}
+
+	private double roots[] = new double[4];
+	private double a0, a2, b2, a4, b4;
+
+	private double orientation;
+	private double maximum;
+	private double minimum;
+	
+	/**
+	 * Solves the tensor in = {fxxfxx, fxyfxy, fyyfyy, fxxfyy, fxxfxy, fyyfxy}.
+	 */
+	public void solve(double in[]) {
+		double p0 = in[0];
+		double p1 = 4.0 * in[4];
+		double p2 = 4.0 * in[1] + 2.0 * in[3];
+		double p3 = 4.0 * in[5];
+		double p4 = in[2];
+		double c2 = 0.5 * (p0 - p4);
+		double s2 = 0.25 * (p1 + p3);
+		double c4 = 0.125 * (p0 - p2 + p4);
+		double s4 = 0.125 * (p1 - p3);
+		a0 = 0.125 * (3.0 * p0 + p2 + 3.0 * p4);
+
+		// Rotation r = k pi/16 where min(|E'(r)|, |E'(r + pi/2)|) is the largest
+		int best = 0;
+		double quality = -1.0;
+		for (int k = 0; k < ROTATIONS; k++) {
+			double rb2 = s2 * COS2[k] - c2 * SIN2[k];
+			double rb4 = s4 * COS4[k] - c4 * SIN4[k];
+			double q = Math.min(Math.abs(2.0 * rb2 + 4.0 * rb4), Math.abs(2.0 * rb2 - 4.0 * rb4));
+			if (q > quality) {
+				quality = q;
+				best = k;
+			}
+		}
+		double r = 0.5 * Math.PI * best / ROTATIONS;
+		a2 = c2 * COS2[best] + s2 * SIN2[best];
+		b2 = s2 * COS2[best] - c2 * SIN2[best];
+		a4 = c4 * COS4[best] + s4 * SIN4[best];
+		b4 = s4 * COS4[best] - c4 * SIN4[best];
+		// The larger of E'(r) and E'(r + pi/2) leads, a rotation by pi/2 
+		// is the reversed polynomial in cot(a - r)
+		if (Math.abs(2.0 * b2 - 4.0 * b4) < Math.abs(2.0 * b2 + 4.0 * b4)) {
+			r += 0.5 * Math.PI;
+			a2 = -a2;
+			b2 = -b2;
+		}
+		
+		// Derivative along the unit circle, times (1 + t^2)^2, t = tan(a - r)
+		double q4 = -2.0 * b2 + 4.0 * b4;
+		double q3 = -4.0 * a2 + 16.0 * a4;
+		double q2 = -24.0 * b4;
+		double q1 = -4.0 * a2 - 16.0 * a4;
+		double q0 = 2.0 * b2 + 4.0 * b4;
+		int n = solveQuartic(q4, q3, q2, q1, q0, roots);
+
+		// The direction a = r + pi/2 is the root at the infinity of t
+		double tmax = Double.POSITIVE_INFINITY;
+		double emax = a0 - a2 + a4;
+		double emin = emax;
+		for (int i = 0; i < n; i++) {
+			double t = roots[i];
+			for (int k = 0; k < 2; k++) {
+				double f = (((q4 * t + q3) * t + q2) * t + q1) * t + q0;
+				double df = ((4.0 * q4 * t + 3.0 * q3) * t + 2.0 * q2) * t + q1;
+				if (df != 0.0)
+					t -= f / df;
+			}
+			double e = energy(t);
+			if (e > emax) {
+				emax = e;
+				tmax = t;
+			}
+			if (e < emin)
+				emin = e;
+		}
+		double a = r + (tmax == Double.POSITIVE_INFINITY ? 0.5 * Math.PI : Math.atan(tmax));
+		orientation = (a > 0.5 * Math.PI ? a - Math.PI : a);
+		maximum = emax;
+		minimum = emin;
+	}
+	
+	/**
+	 * Returns the orientation of the maximum energy, in [-pi/2, pi/2].
+	 */
+	public double getOrientation() {
+		return orientation;
+	}
+	
+	public double getMaximum() {
+		return maximum;
+	}
+	
+	public double getMinimum() {
+		return minimum;
+	}
+
+	/**
+	 * Returns the coherency (max - min) / (max + min).
+	 */
+	public double getCoherency() {
+		return (maximum - minimum) / (maximum + minimum);
+	}
+	
+	/**
+	 * Energy in the direction of tan(a - r) = t.
+	 */
+	private double energy(double t) {
+		double u = 1.0 + t * t;
+		double c = (1.0 - t * t) / u;
+		double s = 2.0 * t / u;
+		return a0 + a2 * c + b2 * s + a4 * (c * c - s * s) + b4 * 2.0 * s * c;
+	}
+	
+	/**
+	 * Real roots of a4 x^4 + a3 x^3 + a2 x^2 + a1 x + a0. 
+	 * The vanishing leading coefficients reduce the degree.
+	 * Returns the number of roots stored in roots.
+	 */
+	static int solveQuartic(double a4, double a3, double a2, double a1, double a0, double roots[]) {
+		double scale = Math.max(Math.max(Math.abs(a4), Math.abs(a3)), Math.max(Math.max(Math.abs(a2), Math.abs(a1)), Math.abs(a0)));
+		if (scale == 0.0)
+			return 0;
+		double eps = 1e-12 * scale;
+		if (Math.abs(a4) <= eps)
+			return solveCubic(a3, a2, a1, a0, roots, eps);
+		
+		// Depressed quartic y^4 + p y^2 + q y + r, x = y - b/4
+		double b = a3 / a4;
+		double c = a2 / a4;
+		double d = a1 / a4;
+		double e = a0 / a4;
+		double b2 = b * b;
+		double p = c - 3.0 * b2 / 8.0;
+		double q = d - b * c / 2.0 + b2 * b / 8.0;
+		double r = e - b * d / 4.0 + b2 * c / 16.0 - 3.0 * b2 * b2 / 256.0;
+		double shift = -b / 4.0;
+		int n = 0;
+		
+		// Resolvent cubic 8m^3 + 8p m^2 + (2p^2 - 8r) m - q^2, its largest root 
+		// is positive, unless q vanishes up to the round-off
+		double unit = Math.max(Math.abs(p), Math.sqrt(Math.abs(r)));
+		double mm = 0.0;
+		if (Math.abs(q) > 1e-9 * unit * Math.sqrt(unit)) {
+			int m = solveCubic(8.0, 8.0 * p, 2.0 * p * p - 8.0 * r, -q * q, roots, 0.0);
+			mm = roots[0];
+			for (int i = 1; i < m; i++)
+				mm = Math.max(mm, roots[i]);
+		}
+		
+		if (mm <= 0.0) {
+			// Biquadratic, a slightly negative z is a double root at 0
+			int m = solveQuadratic(1.0, p, r, roots, 0.0);
+			double z0 = roots[0];
+			double z1 = roots[1];
+			for (int i = 0; i < m; i++) {
+				double z = (i == 0 ? z0 : z1);
+				if (z >= -1e-9 * unit) {
+					double s = Math.sqrt(Math.max(z, 0.0));
+					roots[n++] = s + shift;
+					roots[n++] = -s + shift;
+				}
+			}
+			return n;
+		}
+
+		double s = Math.sqrt(2.0 * mm);
+		double t = q / (2.0 * s);
+		// y^2 + s y + (p/2 + m - t) = 0 and y^2 - s y + (p/2 + m + t) = 0, 
+		// a pair of close roots may have a discriminant slightly negative
+		double c0 = p / 2.0 + mm - t;
+		double c1 = p / 2.0 + mm + t;
+		double disc0 = s * s - 4.0 * c0;
+		double disc1 = s * s - 4.0 * c1;
+		double tolerance = -1e-9 * (s * s + 4.0 * Math.abs(c0) + 4.0 * Math.abs(c1));
+		if (disc0 >= tolerance) {
+			double w = Math.sqrt(Math.max(disc0, 0.0));
+			roots[n++] = (-s + w) / 2.0 + shift;
+			roots[n++] = (-s - w) / 2.0 + shift;
+		}
+		if (disc1 >= tolerance) {
+			double w = Math.sqrt(Math.max(disc1, 0.0));
+			roots[n++] = (s + w) / 2.0 + shift;
+			roots[n++] = (s - w) / 2.0 + shift;
+		}
+		return n;
+	}
+
+	/**
+	 * Real roots of a3 x^3 + a2 x^2 + a1 x + a0, stored in roots.
+	 */
+	static int solveCubic(double a3, double a2, double a1, double a0, double roots[], double eps) {
+		if (Math.abs(a3) <= eps)
+			return solveQuadratic(a2, a1, a0, roots, eps);
+		double b = a2 / a3;
+		double c = a1 / a3;
+		double d = a0 / a3;
+		// Depressed cubic y^3 + p y + q, x = y - b/3
+		double p = c - b * b / 3.0;
+		double q = 2.0 * b * b * b / 27.0 - b * c / 3.0 + d;
+		double shift = -b / 3.0;
+		double disc = q * q / 4.0 + p * p * p / 27.0;
+		if (disc > 0.0) {
+			double w = Math.sqrt(disc);
+			roots[0] = Math.cbrt(-q / 2.0 + w) + Math.cbrt(-q / 2.0 - w) + shift;
+			return 1;
+		}
+		if (p == 0.0) {
+			roots[0] = shift;
+			return 1;
+		}
+		// Three real roots, trigonometric form
+		double r = 2.0 * Math.sqrt(-p / 3.0);
+		double arg = 3.0 * q / (p * r);
+		arg = Math.max(-1.0, Math.min(1.0, arg));
+		double phi = Math.acos(arg) / 3.0;
+		for (int k = 0; k < 3; k++)
+			roots[k] = r * Math.cos(phi - 2.0 * Math.PI * k / 3.0) + shift;
+		return 3;
+	}
+
+	/**
+	 * Real roots of a2 x^2 + a1 x + a0, stored in roots.
+	 */
+	static int solveQuadratic(double a2, double a1, double a0, double roots[], double eps) {
+		if (Math.abs(a2) <= eps) {
+			if (Math.abs(a1) <= eps)
+				return 0;
+			roots[0] = -a0 / a1;
+			return 1;
+		}
+		double disc = a1 * a1 - 4.0 * a2 * a0;
+		if (disc < 0.0)
+			return 0;
+		double w = -0.5 * (a1 + (a1 >= 0.0 ? Math.sqrt(disc) : -Math.sqrt(disc)));
+		if (w == 0.0) {
+			roots[0] = 0.0;
+			roots[1] = 0.0;
+			return 2;
+		}
+		roots[0] = w / a2;
+		roots[1] = a0 / w;
+		return 2;
+	}
+}
@@ -40,6 +40,8 @@
  
 package orientation;
 
+import java.util.Arrays;
+
 import imageware.Builder;
 import imageware.ImageWare;
 
@@ -56,126 +58,90 @@ public class LaplacianOfGaussian {
 		int ny = input.getSizeY();
 		int nt = input.getSizeZ();
 		
-		int d = 0; // dimension
-		d = (sigmaX > 0 ? d+1 : d);
-		d = (sigmaY > 0 ? d+1 : d);
-		
-		if (d == 0)
+		if (sigmaX <= 0 && sigmaY <= 0)
 			return input;
-		double pd = Math.pow(2*Math.PI, d/2.0);
-		double sx = (sigmaX > 0 ? sigmaX: 1.0);
-		double sy = (sigmaY > 0 ? sigmaY: 1.0);
-		double cst = 1.0/(pd*sx*sy);
-		
-		double kernelFactX[] = createKernelLoG_Fact(sigmaX, cst);	
-		double kernelBaseX[] = createKernelLoG_Base(sigmaX);	
-		double kernelFactY[] = createKernelLoG_Fact(sigmaY, cst);	
-		double kernelBaseY[] = createKernelLoG_Base(sigmaY);	
-		
-		ImageWare outputX = Builder.create(nx, ny, nt, ImageWare.FLOAT);
-		ImageWare outputY = Builder.create(nx, ny, nt, ImageWare.FLOAT);
 		
- 		for( int t=0; t<nt; t++) {
-	 		double vinY[] = new double[ny];
-	 		double voutY[] = new double[ny];
-			for (int x=0; x<nx; x++) {
-				input.getY(x, 0, t, vinY);
-				convolve(vinY, voutY, kernelFactY);
-				outputX.putY(x, 0, t, voutY);
-				
-				input.getY(x, 0, t, vinY);
-				convolve(vinY, voutY, kernelBaseY);
-				outputY.putY(x, 0, t, voutY);
-			}
-	 		double vinX[] = new double[nx];
-	 		double voutX[] = new double[nx];
-			for (int y=0; y<ny; y++) {
-				outputX.getX(0, y, t, vinX);
-				convolve(vinX, voutX, kernelBaseX);
-				outputX.putX(0, y, t, voutX);
-				outputY.getX(0, y, t, vinX);
-				convolve(vinX, voutX, kernelFactX);
-				outputY.putX(0, y, t, voutX);
-			}
-		}
-		outputX.add(outputY);
-		
-		return outputX;
+		ImageWare output = Builder.create(nx, ny, nt, ImageWare.FLOAT);
+		Cancellation cancellation = new Cancellation();
+ 		for( int t=0; t<nt; t++)
+ 			output.putXY(0, 0, t, run(input, t, sigmaX, sigmaY, cancellation));
+		return output;
 	}
-	
+
 	/**
-	* cst*(x^2/(sigma^4)-1/(sigma^2))*exp(-(x^2)/(sigma^2))
-    */
-	static private double[] createKernelLoG_Fact(double sigma, double cst) {
+	* Apply a Laplacian of Gaussian 2D on the single frame t of the input.
+	* Separable implementation. Up to the smoothings of the recursive filter, 
+	* the kernels are the sampled LoG of radius 3 sigma, normalized as the 
+	* continuous one. For the large sigma, the frame is smoothed by the 
+	* recursive filter then derived by second differences. Only the axes 
+	* with a positive sigma are derived. The filtering stops when the 
+	* cancellation is requested.
+	* 
+	* Returns a new single-slice float image, only the frame t is read.
+	*/
+	static public ImageWare run(ImageWare input, int t, double sigmaX, double sigmaY, Cancellation cancellation) {
+		if (input == null)
+			return null;
+		int nx = input.getSizeX();
+		int ny = input.getSizeY();
 		
-		if (sigma <= 0.0) {
-			double[] kernel = new double[1];
-			kernel[0] = 1.0;
-			return kernel;
-		}
+		ImageWare slice = Builder.create(nx, ny, 1, ImageWare.FLOAT);
+		input.getXY(0, 0, t, slice);
+		if (sigmaX <= 0 && sigmaY <= 0)
+			return slice;
 		
-		double s2 = sigma*sigma;
-		double s4 = s2*s2;
-		double dem = 2.0*s2;
-		int size = (int)Math.round(((int)(sigma*3.0))*2.0 + 1);	// always odd size
-		int size2 = size/2;
-		double[] kernel = new double[size];
+		double dxx[] = new double[nx*ny];
+		double row[] = new double[nx];
+		for (int y=0; y<ny; y++) {
+			slice.getX(0, y, 0, row);
+			System.arraycopy(row, 0, dxx, y*nx, nx);
+		}
+		double dyy[] = dxx.clone();
+		boolean recursive = 
+				(sigmaX <= 0 || Convolution.select(nx, ny, sigmaX, 2, sigmaY, 0) == Convolution.METHOD_IIR) && 
+				(sigmaY <= 0 || Convolution.select(nx, ny, sigmaX, 0, sigmaY, 2) == Convolution.METHOD_IIR);
+		if (sigmaX <= 0)
+			Arrays.fill(dxx, 0.0);
+		else if (recursive)
+			Convolution.filter(dxx, nx, ny, sigmaX, 2, sigmaY, 0, cancellation);
+		else
+			Convolution.filter(dxx, nx, ny, createKernel(sigmaX, 2), createKernel(sigmaY, 0), cancellation);
+		if (sigmaY <= 0)
+			Arrays.fill(dyy, 0.0);
+		else if (recursive)
+			Convolution.filter(dyy, nx, ny, sigmaX, 0, sigmaY, 2, cancellation);
+		else
+			Convolution.filter(dyy, nx, ny, createKernel(sigmaX, 0), createKernel(sigmaY, 2), cancellation);
 		
-		double x;
-		for(int k=0; k<size; k++) {
-			x = (k-size2)*(k-size2);
-			kernel[k] = cst * (x/s4-1.0/s2) * Math.exp(-x/dem);
+		for (int y=0; y<ny; y++) {
+			for (int x=0, k=y*nx; x<nx; x++, k++)
+				row[x] = dxx[k] + dyy[k];
+			slice.putX(0, y, 0, row);
 		}
-		return kernel;
+		return slice;
 	}
 	
 	/**
-	* exp(-(x^2)/(sigma^2))
-	 */
-	static private double[] createKernelLoG_Base(double sigma) {
-		
-		if (sigma <= 0.0) {
-			double[] kernel = new double[1];
-			kernel[0] = 1.0;
-			return kernel;
-		}
+	* Sampled 1D Gaussian of radius 3 sigma, normalized as the continuous 
+	* one, or its second derivative (x^2/sigma^4 - 1/sigma^2) g(x) for the 
+	* order 2. The identity if sigma is not positive.
+	*/
+	static private double[] createKernel(double sigma, int order) {
+		if (sigma <= 0.0)
+			return new double[] {1.0};
 		
 		double s2 = sigma*sigma;
-		double dem = 2.0*s2;
-		int size = (int)Math.round(((int)(sigma*3.0))*2.0 + 1);	// always odd size
-		int size2 = size/2;
-		double[] kernel = new double[size];
-		
-		double x;
-		for(int k=0; k<size; k++) {
-			x = (k-size2)*(k-size2);
-			kernel[k] = Math.exp(-x/dem);
+		double s4 = s2*s2;
+		double cst = 1.0 / (Math.sqrt(2.0*Math.PI) * sigma);
+		int size2 = (int)(sigma*3.0);
+		double[] kernel = new double[2*size2 + 1];
+		for (int k=-size2; k<=size2; k++) {
+			double x = k*k;
+			kernel[k+size2] = cst * Math.exp(-x/(2.0*s2));
+			if (order == 2)
+				kernel[k+size2] *= x/s4 - 1.0/s2;
 		}
 		return kernel;
 	}
 	
-	static private double[] convolve(double vin[], double vout[], double kernel[]) {
-		int n = vin.length;
-		int nk = kernel.length;
-		int kc = nk/2;
-		int	period = (n <= 1 ? 1: 2*n - 2);
-		
-		int im;
-		for (int i=0; i<n; i++) {
-			double sum=0.0;
-			for (int k=0; k<nk; k++) {
-				im = i + k - kc;
-				while (im < 0)
-					im += period;
-				while (im >= n) {
-					im = period - im;
-					im = (im < 0 ? -im : im);
-				}
-				sum += kernel[k] * vin[im];
-			}
-			vout[i] = sum;
-		}
-		return vout;
-	}
-	
-}
\ No newline at end of file
+}
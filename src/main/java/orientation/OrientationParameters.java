@@ -59,6 +59,14 @@ public class OrientationParameters {
 	final public static int		GRADIENT_GAUSSIAN		= 4;
 	final public static int		HESSIAN					= 5;
 
+	final public static int		TENSOR_SERIAL			= 0;
+	final public static int		TENSOR_TILED				= 1;
+
+	final public static int		PRECISION_FLOAT			= 0;
+	final public static int		PRECISION_DOUBLE			= 1;
+
+	final public static int		FRAMES_IN_FLIGHT			= Math.min(4, Runtime.getRuntime().availableProcessors());
+
 	final public static int		GRADIENT_HORIZONTAL		= 0;
 	final public static int		GRADIENT_VERTICAL		= 1;
 	final public static int		TENSOR_ENERGY			= 2;
@@ -76,8 +84,14 @@ public class OrientationParameters {
 
 	public double				sigmaLoG					= 0;
 	public double				sigmaST					= 2;
+	public double				sigmaGradient			= 1;
+	public double				sigmaHessian				= 0;
 	public double				epsilon					= 0.01;
 
+	public int					tensorEngine				= TENSOR_TILED;
+	public int					framesInFlight			= FRAMES_IN_FLIGHT;
+	public int					tensorPrecision			= PRECISION_FLOAT;
+
 	public double				minCoherency				= 0;
 	public double				minEnergy				= 0;
 
@@ -90,6 +104,7 @@ public class OrientationParameters {
 	public boolean				radian[]					= new boolean[NB_FEATURES];
 
 	public String				pathSaveDistribution	= "";
+	public String				pathStream				= "";
 	final static public String	name[]					= { "Gradient-X", "Gradient-Y", "Energy", "Orientation",
 			"Coherency", "Harris-index", "Color-survey", "S-Mask", "S-Orientation", "S-Color-survey",
 			"S-Distribution" };
@@ -127,6 +142,14 @@ public class OrientationParameters {
 		return "Untitled Service";
 	}
 
+	/**
+	 * Returns true if the features are streamed frame by frame to the 
+	 * directory pathStream instead of being kept in memory.
+	 */
+	public boolean isStreaming() {
+		return !pathStream.equals("");
+	}
+
 	public boolean isServiceAnalysis() {
 		return service == OrientationService.ANALYSIS;
 	}
@@ -150,6 +173,7 @@ public class OrientationParameters {
 	public void load(Settings settings) {
 		epsilon = settings.loadValue("epsilon", epsilon);
 		hsb = settings.loadValue("hsb", hsb);
+		framesInFlight = Math.max(1, settings.loadValue("frames_in_flight", framesInFlight));
 		for (int k = 0; k < OrientationParameters.NB_FEATURES; k++) {
 			view[k] = settings.loadValue("view_" + name[k],
 					((k == SURVEY || k == HARRIS || k == DIST_HISTO) ? true : false));
@@ -169,6 +193,7 @@ public class OrientationParameters {
 	public void store(Settings settings) {
 		settings.storeValue("epsilon", epsilon);
 		settings.storeValue("hsb", hsb);
+		settings.storeValue("frames_in_flight", framesInFlight);
 		for (int k = 0; k < OrientationParameters.NB_FEATURES; k++) {
 			settings.storeValue("view_" + name[k], view[k]);
 			settings.storeValue("radian_" + name[k], radian[k]);
@@ -190,6 +215,10 @@ public class OrientationParameters {
 		minCoherency = Double.parseDouble(Macro.getValue(options, "min-coherency", "0"));
 		minEnergy = Double.parseDouble(Macro.getValue(options, "min-energy", "0"));
 		gradient = Integer.parseInt(Macro.getValue(options, "gradient", "0"));
+		sigmaGradient = Double.parseDouble(Macro.getValue(options, "sigma-gradient", "1"));
+		sigmaHessian = Double.parseDouble(Macro.getValue(options, "sigma-hessian", "0"));
+		tensorPrecision = (Macro.getValue(options, "precision", "float").equals("double") ? PRECISION_DOUBLE : PRECISION_FLOAT);
+		framesInFlight = Math.max(1, Integer.parseInt(Macro.getValue(options, "frames-in-flight", "" + FRAMES_IN_FLIGHT)));
 		for (int i = 0; i < OrientationParameters.NB_FEATURES; i++) {
 			view[i] = Macro.getValue(options, OrientationParameters.name[i], "off").equals("on");
 		}
@@ -201,6 +230,7 @@ public class OrientationParameters {
 			featureBri = Macro.getValue(options, "bri", "Constant");
 		}
 		pathSaveDistribution = Macro.getValue(options, "filename", "");
+		pathStream = Macro.getValue(options, "stream", "");
 	}
 
 }
\ No newline at end of file
@@ -43,13 +43,14 @@ import java.awt.Color;
 import java.io.File;
 import java.io.FileWriter;
 import java.util.Vector;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CancellationException;
 
 import additionaluserinterface.WalkBar;
 import ij.IJ;
 import ij.ImagePlus;
+import ij.ImageStack;
 import ij.gui.PlotWindow;
+import imageware.Builder;
 import imageware.FMath;
 import imageware.ImageWare;
 
@@ -59,6 +60,8 @@ public class OrientationProcess extends Thread {
 	private OrientationParameters params;
 	private WalkBar walk;
 	private ImageWare source;
+	private ImageStack stack;
+	private Cancellation cancellation = new Cancellation();
 	
 	public OrientationProcess(ImageWare source, OrientationParameters params) {
 		this.walk = new WalkBar("", false, false, false, 100);
@@ -72,6 +75,20 @@ public class OrientationProcess extends Thread {
 		this.params = params;
 	}
 	
+	/**
+	 * Constructor for the streaming mode, the frames are read one at a time 
+	 * from the stack which can be virtual.
+	 */
+	public OrientationProcess(ImageStack stack, OrientationParameters params) {
+		this(new WalkBar("", false, false, false, 100), stack, params);
+	}
+	
+	public OrientationProcess(WalkBar walk, ImageStack stack, OrientationParameters params) {
+		this.walk = walk;
+		this.stack = stack;
+		this.params = params;
+	}
+	
 	public OrientationProcess(GroupImage gim, OrientationParameters params) {
 		this.walk = new WalkBar();
 		this.source = gim.source;
@@ -83,24 +100,162 @@ public class OrientationProcess extends Thread {
 		return gim;
 	}
 
+	/**
+	 * Requests the cancellation of the run. The computation stops at the next
+	 * check of the inner loops and releases its CPU.
+	 */
+	public void cancel() {
+		cancellation.cancel();
+	}
+
+	public boolean isCancelled() {
+		return cancellation.isCancelled();
+	}
+
 	public void run() {
 		walk.reset();
+		Convolution.calibrate();
 
+		if (params.isStreaming()) {
+			runStream();
+			return;
+		}
+		
 		gim = new GroupImage(walk, source, params);
+		gim.cancellation = cancellation;
+
+		try {
+			analysis(gim);
+		}
+		catch (CancellationException ex) {
+			walk.finish("Cancelled");
+			return;
+		}
+			
+		walk.finish();
+	}
+
+	/**
+	 * Computes the gradient (or the Hessian) and the structure tensor.
+	 * If the gradient is not kept, the stages are fused frame by frame and
+	 * the gradient only lives in a single-frame working image. The filters 
+	 * of the gradient are then built once and shared by all the frames.
+	 */
+	private void analysis(final GroupImage gim) {
+		if (!gim.isGradientKept()) {
+			if (!gim.isTensorRequired())
+				return;
+			final Gradient.Filters filters = Gradient.createFilters(gim.nx, gim.ny, params);
+			new StackScheduler(gim.nt, params.framesInFlight, cancellation).run(new StackScheduler.Frame() {
+				public void process(int t) {
+					GroupImage frame = gim.getFrame(t);
+					analysis(frame, filters);
+					gim.putFrame(t, frame);
+				}
+			});
+			return;
+		}
+		analysis(gim, null);
+	}
 
+	/**
+	 * Computes the gradient (or the Hessian) and the structure tensor of a 
+	 * GroupImage which keeps its gradient. The filters of the gradient are 
+	 * shared with the other frames if they are given, otherwise they are 
+	 * built for this GroupImage.
+	 */
+	private void analysis(GroupImage gim, Gradient.Filters filters) {
 		if (params.gradient == OrientationParameters.HESSIAN)
 			new Hessian(walk, gim, params).run();
 		else
-			new Gradient(walk, gim, params).run();
+			new Gradient(walk, gim, params, filters).run();
 					
-		StructureTensor st = new StructureTensor(walk, gim, params);
-		ExecutorService executor = Executors.newFixedThreadPool(1);
-		executor.execute(st);
-		executor.shutdown();
-		while (!executor.isTerminated()) {}
-			
+		new StructureTensor(walk, gim, params).run();
+	}
+	
+	/**
+	 * Streaming mode: the frames are pulled one at a time from the source,
+	 * analysed, and the selected features are written to the directory 
+	 * pathStream as one 32-bits TIFF file per frame, in a subdirectory per 
+	 * feature. Only one frame is kept in memory, whatever the length of the 
+	 * stack. The subdirectories can be opened as virtual image sequences.
+	 */
+	private void runStream() {
+		int nt = (stack != null ? stack.getSize() : source.getSizeZ());
+		int nx = (stack != null ? stack.getWidth() : source.getWidth());
+		int ny = (stack != null ? stack.getHeight() : source.getHeight());
+		File dir = new File(params.pathStream);
+		if (!dir.exists() && !dir.mkdirs()) {
+			IJ.log("Error to create the directory: " + params.pathStream);
+			walk.finish("Error");
+			return;
+		}
+		Gradient.Filters filters = Gradient.createFilters(nx, ny, params);
+		try {
+			for (int t = 0; t < nt; t++) {
+				cancellation.check();
+				GroupImage frame = (stack != null ? 
+					new GroupImage(walk, stack.getProcessor(t+1), params) : 
+					new GroupImage(walk, getFrame(t), params, true));
+				frame.cancellation = cancellation;
+				analysis(frame, filters);
+				if (!writeFrame(frame, dir, t)) {
+					IJ.log("Error to write into the directory: " + params.pathStream);
+					walk.finish("Error");
+					return;
+				}
+				gim = frame;
+				walk.progress("Frame " + (t+1) + "/" + nt, (t+1)*100.0/nt);
+			}
+		}
+		catch (CancellationException ex) {
+			walk.finish("Cancelled");
+			return;
+		}
 		walk.finish();
 	}
+	
+	/**
+	 * Returns a single-frame copy of the frame t of the source.
+	 */
+	private ImageWare getFrame(int t) {
+		ImageWare frame = Builder.create(source.getWidth(), source.getHeight(), 1, source.getType());
+		source.getXY(0, 0, t, frame);
+		return frame;
+	}
+
+	/**
+	 * Writes the selected features of a single-frame GroupImage.
+	 * The values are not rescaled to keep the frames comparable.
+	 */
+	private boolean writeFrame(GroupImage frame, File dir, int t) {
+		ImageWare orientation = frame.orientation;
+		boolean degrees = !params.radian[OrientationParameters.TENSOR_ORIENTATION];
+		if (orientation != null && params.view[OrientationParameters.TENSOR_ORIENTATION] && degrees) {
+			orientation = orientation.duplicate();
+			orientation.multiply(180.0/Math.PI);
+		}
+		boolean ok = true;
+		ok &= writeFeature(OrientationParameters.GRADIENT_HORIZONTAL, (frame.gx != null ? frame.gx : frame.hxx), dir, t);
+		ok &= writeFeature(OrientationParameters.GRADIENT_VERTICAL, (frame.gy != null ? frame.gy : frame.hyy), dir, t);
+		ok &= writeFeature(OrientationParameters.TENSOR_ENERGY, frame.energy, dir, t);
+		ok &= writeFeature(OrientationParameters.TENSOR_ORIENTATION, orientation, dir, t);
+		ok &= writeFeature(OrientationParameters.TENSOR_COHERENCY, frame.coherency, dir, t);
+		ok &= writeFeature(OrientationParameters.HARRIS, frame.harris, dir, t);
+		return ok;
+	}
+	
+	private boolean writeFeature(int feature, ImageWare image, File dir, int t) {
+		if (image == null || !params.view[feature])
+			return true;
+		String name = OrientationParameters.name[feature];
+		File sub = new File(dir, name);
+		if (!sub.exists() && !sub.mkdirs())
+			return false;
+		String filename = name + "-" + IJ.pad(t+1, 5) + ".tif";
+		ImagePlus imp = new ImagePlus(filename, image.buildImageStack());
+		return IJ.saveAsTiff(imp, new File(sub, filename).getPath());
+	}
 
 	/**
 	*/
@@ -0,0 +1,208 @@
+//==============================================================================
+//
+// Project: Directional Image Analysis - OrientationJ plugin
+// 
+// Author: Daniel Sage
+// 
+// Organization: Biomedical Imaging Group (BIG)
+// Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+//
+// Information: 
+// OrientationJ: http://bigwww.epfl.ch/demo/orientation/
+// MonogenicJ: http://bigwww.epfl.ch/demo/monogenic/
+//  
+//
+// Reference on methods and plugin
+// Z. Püspöki, M. Storath, D. Sage, M. Unser
+// "Transforms and Operators for Directional Bioimage Analysis: A Survey," 
+// Advances in Anatomy, Embryology and Cell Biology, vol. 219, Focus on Bio-Image Informatics, 
+// Springer International Publishing, ch. 3, pp. 69-93, May 21, 2016.
+//
+// Reference on applications
+// E. Fonck, G.G. Feigl, J. Fasel, D. Sage, M. Unser, D.A. Ruefenacht, N. Stergiopulos 
+// "Effect of Aging on Elastin Functionality in Human Cerebral Arteries,"
+// Stroke, vol. 40, no. 7, pp. 2552-2556, July 2009.
+//
+// R. Rezakhaniha, A. Agianniotis, J.T.C. Schrauwen, A. Griffa, D. Sage, C.V.C. Bouten, F.N. van de Vosse, M. Unser, N. Stergiopulos
+// "Experimental Investigation of Collagen Waviness and Orientation in the Arterial Adventitia Using Confocal Laser Scanning Microscopy,"
+// Biomechanics and Modeling in Mechanobiology, vol. 11, no. 3-4, pp. 461-473, 2012.
+
+// Conditions of use: You'll be free to use this software for research purposes,
+// but you should not redistribute it without our consent. In addition, we 
+// expect you to include a citation or acknowledgment whenever you present or 
+// publish results that are based on it.
+//
+// History:
+// - Updated (Daniel Sage, 24 January 2011)
+// - Added the Vector field (Daniel Sage, 1 March 2017)
+//
+//==============================================================================
+
+package orientation;
+
+/**
+ * Recursive Gaussian filter and its derivatives, third order filter of 
+ * Young and van Vliet.
+ * 
+ * The smoothing is a causal then an anti-causal pass of 3 poles, the 
+ * derivatives of order 1 and 2 are the central differences of the smoothed 
+ * signal (van Vliet, Young and Verbeek). The cost per sample does not depend 
+ * on sigma. The boundary conditions are mirroring, the lines are extended by 
+ * a margin of 4 sigma. Below a smoothing of 0.5 the smoothing is skipped.
+ * 
+ * The sigma and the derivative order are given per axis. The lines are 
+ * processed by batches of adjacent lanes, in parallel.
+ */
+public class RecursiveGaussian {
+
+	/** Number of lines filtered together */
+	public static final int LANES = 16;
+
+	/** Minimum number of lines processed by a task */
+	private static final int GRAIN = 16;
+
+	private static final ThreadLocal<double[][]> scratches = new ThreadLocal<double[][]>() {
+		protected double[][] initialValue() {
+			return new double[1][0];
+		}
+	};
+
+	/**
+	 * Filters in place the image data of size nx*ny stored row-major, with
+	 * sigmaX and the derivative orderX along x, then sigmaY and orderY 
+	 * along y.
+	 */
+	public static void filter(final double data[], final int nx, final int ny, 
+			final double sigmaX, final int orderX, final double sigmaY, final int orderY, final Cancellation cancellation) {
+		ComputeScheduler.parallel(ny, GRAIN, new ComputeScheduler.Range() {
+			public void process(int lo, int hi) {
+				for (int y=lo; y<hi; y+=LANES) {
+					cancellation.check();
+					filter(data, y*nx, 1, nx, nx, Math.min(LANES, hi - y), sigmaX, orderX);
+				}
+			}
+		});
+		ComputeScheduler.parallel(nx, GRAIN, new ComputeScheduler.Range() {
+			public void process(int lo, int hi) {
+				for (int x=lo; x<hi; x+=LANES) {
+					cancellation.check();
+					filter(data, x, nx, 1, ny, Math.min(LANES, hi - x), sigmaY, orderY);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Filters in place a batch of lanes. The sample i of the lane l is 
+	 * data[offset + i*stride + l*laneStride].
+	 */
+	public static void filter(double data[], int offset, int stride, int laneStride, int length, int lanes, double sigma, int order) {
+		double smoothing = getSmoothing(sigma, order);
+		if (smoothing == 0 && order == 0)
+			return;
+		int margin = getMargin(smoothing);
+		int n = length + 2 * margin;
+		double w[] = getScratch(n * lanes);
+		load(data, offset, stride, laneStride, length, lanes, margin, w);
+		if (smoothing > 0)
+			smooth(w, n, lanes, smoothing);
+		store(w, margin, order, data, offset, stride, laneStride, length, lanes);
+	}
+
+	/**
+	 * Returns the sigma of the smoothing which precedes the differences of 
+	 * the given order, or 0 if the smoothing is skipped. At the low 
+	 * frequencies, the first difference sin(w) adds the variance 1/3 and the 
+	 * second difference 2-2cos(w) adds the variance 1/6.
+	 */
+	static double getSmoothing(double sigma, int order) {
+		double s2 = sigma * sigma;
+		if (order == 1)
+			s2 -= 1.0 / 3.0;
+		else if (order == 2)
+			s2 -= 1.0 / 6.0;
+		return (s2 >= 0.25 ? Math.sqrt(s2) : 0.0);
+	}
+
+	/**
+	 * Returns the margin of the mirror extension for a smoothing.
+	 */
+	static int getMargin(double smoothing) {
+		return (int)Math.ceil(4.0 * smoothing) + 3;
+	}
+
+	/**
+	 * Copies a batch of lanes extended by mirroring with a margin into w, 
+	 * the sample i of the lane l is stored at w[(i+margin)*lanes + l].
+	 */
+	static void load(double data[], int offset, int stride, int laneStride, int length, int lanes, int margin, double w[]) {
+		int n = length + 2 * margin;
+		for (int i=0; i<n; i++) {
+			int k = offset + mirror(i - margin, length) * stride;
+			for (int l=0, b=i*lanes; l<lanes; l++, b++, k+=laneStride)
+				w[b] = data[k];
+		}
+	}
+
+	/**
+	 * Smooths in place the n samples of the lanes of w by the causal and 
+	 * anti-causal passes.
+	 */
+	static void smooth(double w[], int n, int lanes, double sigma) {
+		double q = (sigma >= 2.5 ? 0.98711 * sigma - 0.96330 : 3.97156 - 4.14554 * Math.sqrt(1.0 - 0.26891 * sigma));
+		double q2 = q * q;
+		double q3 = q2 * q;
+		double b0 = 1.57825 + 2.44413 * q + 1.4281 * q2 + 0.422205 * q3;
+		double b1 = (2.44413 * q + 2.85619 * q2 + 1.26661 * q3) / b0;
+		double b2 = -(1.4281 * q2 + 1.26661 * q3) / b0;
+		double b3 = (0.422205 * q3) / b0;
+		double B = 1.0 - (b1 + b2 + b3);
+		// Causal, the steady state of the first sample is itself
+		for (int i=3*lanes; i<n*lanes; i++)
+			w[i] = B * w[i] + b1 * w[i-lanes] + b2 * w[i-2*lanes] + b3 * w[i-3*lanes];
+		// Anti-causal
+		for (int i=(n-4)*lanes+lanes-1; i>=0; i--)
+			w[i] = B * w[i] + b1 * w[i+lanes] + b2 * w[i+2*lanes] + b3 * w[i+3*lanes];
+	}
+
+	/**
+	 * Copies back the lanes of w without the margin, after the central 
+	 * differences of the given order.
+	 */
+	static void store(double w[], int margin, int order, double data[], int offset, int stride, int laneStride, int length, int lanes) {
+		for (int i=0; i<length; i++) {
+			int k = offset + i * stride;
+			int b = (i + margin) * lanes;
+			if (order == 0)
+				for (int l=0; l<lanes; l++, k+=laneStride)
+					data[k] = w[b+l];
+			else if (order == 1)
+				for (int l=0; l<lanes; l++, k+=laneStride)
+					data[k] = 0.5 * (w[b+lanes+l] - w[b-lanes+l]);
+			else
+				for (int l=0; l<lanes; l++, k+=laneStride)
+					data[k] = w[b+lanes+l] - 2.0 * w[b+l] + w[b-lanes+l];
+		}
+	}
+
+	/**
+	 * Mirror boundary conditions for the index i of a line of length n, 
+	 * for any i.
+	 */
+	static int mirror(int i, int n) {
+		if (n == 1)
+			return 0;
+		int period = 2 * n - 2;
+		i = i % period;
+		if (i < 0)
+			i += period;
+		return (i < n ? i : period - i);
+	}
+
+	private static double[] getScratch(int size) {
+		double scratch[][] = scratches.get();
+		if (scratch[0].length < size)
+			scratch[0] = new double[size];
+		return scratch[0];
+	}
+}
@@ -0,0 +1,114 @@
+//==============================================================================
+//
+// Project: Directional Image Analysis - OrientationJ plugin
+// 
+// Author: Daniel Sage
+// 
+// Organization: Biomedical Imaging Group (BIG)
+// Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+//
+// Information: 
+// OrientationJ: http://bigwww.epfl.ch/demo/orientation/
+// MonogenicJ: http://bigwww.epfl.ch/demo/monogenic/
+//  
+//
+// Reference on methods and plugin
+// Z. Püspöki, M. Storath, D. Sage, M. Unser
+// "Transforms and Operators for Directional Bioimage Analysis: A Survey," 
+// Advances in Anatomy, Embryology and Cell Biology, vol. 219, Focus on Bio-Image Informatics, 
+// Springer International Publishing, ch. 3, pp. 69-93, May 21, 2016.
+//
+// Reference on applications
+// E. Fonck, G.G. Feigl, J. Fasel, D. Sage, M. Unser, D.A. Ruefenacht, N. Stergiopulos 
+// "Effect of Aging on Elastin Functionality in Human Cerebral Arteries,"
+// Stroke, vol. 40, no. 7, pp. 2552-2556, July 2009.
+//
+// R. Rezakhaniha, A. Agianniotis, J.T.C. Schrauwen, A. Griffa, D. Sage, C.V.C. Bouten, F.N. van de Vosse, M. Unser, N. Stergiopulos
+// "Experimental Investigation of Collagen Waviness and Orientation in the Arterial Adventitia Using Confocal Laser Scanning Microscopy,"
+// Biomechanics and Modeling in Mechanobiology, vol. 11, no. 3-4, pp. 461-473, 2012.
+
+// Conditions of use: You'll be free to use this software for research purposes,
+// but you should not redistribute it without our consent. In addition, we 
+// expect you to include a citation or acknowledgment whenever you present or 
+// publish results that are based on it.
+//
+// History:
+// - Updated (Daniel Sage, 24 January 2011)
+// - Added the Vector field (Daniel Sage, 1 March 2017)
+//
+//==============================================================================
+
+package orientation;
+
+import java.util.concurrent.Future;
+
+/**
+ * Scheduler of the frames of a stack.
+ * 
+ * The frames are independent, several of them are processed at once on the 
+ * shared ComputeScheduler. The number of frames in flight is bounded to keep 
+ * the memory under control: each frame in flight holds its own working 
+ * buffers. Every frame writes only in its own slice of the GroupImage, so the 
+ * results are identical to the sequential path.
+ */
+public class StackScheduler {
+
+	/**
+	 * Work to do on a single frame.
+	 */
+	public interface Frame {
+		public void process(int t);
+	}
+
+	private int nt;
+	private int maxInFlight;
+	private Cancellation cancellation;
+
+	public StackScheduler(int nt, int maxInFlight, Cancellation cancellation) {
+		this.nt = nt;
+		this.maxInFlight = Math.max(1, Math.min(maxInFlight, nt));
+		this.cancellation = (cancellation == null ? new Cancellation() : cancellation);
+	}
+
+	/**
+	 * Processes all the frames and returns when the last one is done.
+	 */
+	public void run(final Frame frame) {
+		if (maxInFlight == 1) {
+			for (int t = 0; t < nt; t++) {
+				cancellation.check();
+				frame.process(t);
+			}
+			return;
+		}
+		Future<?> futures[] = new Future<?>[nt];
+		int next = 0;
+		try {
+			for (; next < maxInFlight; next++)
+				futures[next] = submit(frame, next);
+			for (int t = 0; t < nt; t++) {
+				ComputeScheduler.join(futures[t]);
+				futures[t] = null;
+				if (next < nt) {
+					cancellation.check();
+					futures[next] = submit(frame, next);
+					next++;
+				}
+			}
+		}
+		catch (RuntimeException ex) {
+			for (int t = 0; t < next; t++)
+				if (futures[t] != null)
+					futures[t].cancel(false);
+			throw ex;
+		}
+	}
+
+	private Future<?> submit(final Frame frame, final int t) {
+		return ComputeScheduler.submit(new Runnable() {
+			public void run() {
+				frame.process(t);
+			}
+		});
+	}
+}
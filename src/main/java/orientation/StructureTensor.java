@@ -42,8 +42,6 @@ package orientation;
 
 import java.awt.Polygon;
 import java.awt.Rectangle;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import additionaluserinterface.WalkBar;
 import ij.IJ;
@@ -55,14 +53,13 @@ import orientationj.Measure;
 
 public class StructureTensor implements Runnable {
 
-	/** Maximum number of iterations for the Hessian search optimization */
-	private int	maxIteration	= 100;
+	/** Minimum number of lines processed by a task */
+	private static final int GRAIN = 16;
 
-	/** Tolerance to stop the Hessian search optimization */
-	private double	tolerance	= 1.0;
-
-	/** Step for the Hessian search optimization */
-	private double	etta		= 1.0;
+	/** Channels of the interleaved structure tensor */
+	static final int XX = 0;
+	static final int XY = 1;
+	static final int YY = 2;
 
 	/** Progress bar */
 	private WalkBar walk;
@@ -80,148 +77,144 @@ public class StructureTensor implements Runnable {
 	}
 	
 	public void run() {
-		if (params.gradient == OrientationParameters.HESSIAN)
-			analysisOnHessian();
-		else
-			analysisOnGradient();
+		if (!gim.isTensorRequired())
+			return;
+		final boolean hessian = params.gradient == OrientationParameters.HESSIAN;
+		final StructureTensorTiled tiled = 
+			(params.tensorEngine == OrientationParameters.TENSOR_TILED ? new StructureTensorTiled(walk, gim, params) : null);
+		new StackScheduler(gim.nt, params.framesInFlight, gim.cancellation).run(new StackScheduler.Frame() {
+			public void process(int t) {
+				if (hessian)
+					analysisOnHessian(t);
+				else if (tiled != null)
+					tiled.run(t);
+				else
+					analysisOnGradient(t);
+			}
+		});
 	}
 	
 	/**
-	 * Compute all the structure tensor based on the 2-components gradient
-	 * vector.
+	 * Compute the structure tensor of the frame t based on the 2-components 
+	 * gradient vector.
 	 * 
-	 * The 3 Gaussian filters has implemented in parallel (multithread).
+	 * The 3 components are interleaved and smoothed in the same sweep by a 
+	 * single thread. This is the serial engine (TENSOR_SERIAL), the reference 
+	 * of StructureTensorTiled.
 	 * 
 	 * @author Daniel Sage
 	 */
-	 private void analysisOnGradient() {
+	 private void analysisOnGradient(int t) {
 		int mx = gim.nx;
 		int my = gim.ny;
-		int nt = gim.nt;
 		double K = params.harrisK;
+		boolean precision = params.tensorPrecision == OrientationParameters.PRECISION_DOUBLE;
 
-		double xx, yy, xy;
+		double gx, gy, xx, yy, xy;
 
-		double[][] dxx = new double[mx][my];
-		double[][] dxy = new double[mx][my];
-		double[][] dyy = new double[mx][my];
+		TensorBuffer tensor = new TensorBuffer(mx, my, 3, precision);
 		
-		for (int t = 0; t < nt; t++) {
-			walk.progress("Tensor " + (t+1), 0);
-			gim.gx.getXY(0, 0, t, dxx);
-			gim.gy.getXY(0, 0, t, dyy);
-			for (int y = 0; y < my; y++) {
-				walk.increment(15.0/my);
-				for (int x = 0; x < mx; x++) {
-					dxy[x][y] = dxx[x][y] * dyy[x][y];
-					dyy[x][y] = dyy[x][y] * dyy[x][y];
-					dxx[x][y] = dxx[x][y] * dxx[x][y];
-				}
-			}
-			if (params.sigmaST > 0) {
-				Gaussian gxx = new Gaussian(walk, 20, dxx, params.sigmaST, mx, my);
-				Gaussian gyy = new Gaussian(walk, 20, dyy, params.sigmaST, mx, my);
-				Gaussian gxy = new Gaussian(walk, 20, dxy, params.sigmaST, mx, my);
-				ExecutorService executor = Executors.newFixedThreadPool(3);
-				executor.execute(gxx);
-				executor.execute(gxy);
-				executor.execute(gyy);
-				executor.shutdown();
-				while (!executor.isTerminated()) {
-				}
+		walk.progress("Tensor " + (t+1), 0);
+		float[] fx = gim.gx.getSliceFloat(t);
+		float[] fy = gim.gy.getSliceFloat(t);
+		for (int y = 0, k = 0; y < my; y++) {
+			walk.increment(15.0/my);
+			for (int x = 0; x < mx; x++, k++) {
+				gx = fx[k];
+				gy = fy[k];
+				tensor.put(k, XX, gx * gx);
+				tensor.put(k, XY, gx * gy);
+				tensor.put(k, YY, gy * gy);
 			}
-
-			for (int y = 0; y < my; y++) {
-				walk.increment(25.0/my);
-				for (int x = 0; x < mx; x++) {
-					xx = dxx[x][y];
-					yy = dyy[x][y];
-					xy = dxy[x][y];
-					gim.energy.putPixel(x, y, t, xx + yy);
-					gim.coherency.putPixel(x, y, t, computeCoherency(xx, yy, xy, params.epsilon));
-					gim.orientation.putPixel(x, y, t, computeOrientation(xx, yy, xy));
-					if (params.isServiceHarris())
-						gim.harris.putPixel(x, y, t, (xx * yy - xy * xy - K * (xx + yy) * (xx + yy)));
-				}
+		}
+		if (params.sigmaST > 0)
+			new Gaussian(walk, 60, tensor, params.sigmaST, gim.cancellation).run();
+
+		float[] energy = (gim.energy != null ? gim.energy.getSliceFloat(t) : null);
+		float[] coherency = (gim.coherency != null ? gim.coherency.getSliceFloat(t) : null);
+		float[] orientation = (gim.orientation != null ? gim.orientation.getSliceFloat(t) : null);
+		float[] harris = (gim.harris != null ? gim.harris.getSliceFloat(t) : null);
+		for (int y = 0, k = 0; y < my; y++) {
+			walk.increment(25.0/my);
+			for (int x = 0; x < mx; x++, k++) {
+				xx = tensor.get(k, XX);
+				yy = tensor.get(k, YY);
+				xy = tensor.get(k, XY);
+				if (energy != null)
+					energy[k] = (float)(xx + yy);
+				if (coherency != null)
+					coherency[k] = (float)computeCoherency(xx, yy, xy, params.epsilon);
+				if (orientation != null)
+					orientation[k] = (float)computeOrientation(xx, yy, xy);
+				if (harris != null)
+					harris[k] = (float)(xx * yy - xy * xy - K * (xx + yy) * (xx + yy));
 			}
 		}
 	}
 
 	/**
-	 * Compute all the structure tensor based on the 3-components hessian
-	 * vector.
+	 * Compute the structure tensor of the frame t based on the 3-components 
+	 * hessian vector.
+	 * 
+	 * The orientation is given by the closed-form HessianSolver, the lines 
+	 * are processed in parallel.
 	 * 
 	 * @author Pad Pedram
 	 */
-	 private void analysisOnHessian() {
-
-		int NIP = 8;
-
-		int mx = gim.nx;
+	 private void analysisOnHessian(final int t) {
+		final int mx = gim.nx;
 		int my = gim.ny;
-		int nt = gim.nt;
-
-		double[][] fxxfxx = new double[mx][my];
-		double[][] fxyfxy = new double[mx][my];
-		double[][] fyyfyy = new double[mx][my];
-		double[][] fxxfyy = new double[mx][my];
-		double[][] fxxfxy = new double[mx][my];
-		double[][] fyyfxy = new double[mx][my];
-
-		double[][] hxx = new double[mx][my];
-		double[][] hyy = new double[mx][my];
-		double[][] hxy = new double[mx][my];
-
-		double hfeatureMax[] = new double[4];
-		double hfeatureMin[] = new double[4];
-		double[] htensor = new double[6];
-		for (int t = 0; t < nt; t++) {
-			
-			gim.hxx.getXY(0, 0, t, hxx);
-			gim.hyy.getXY(0, 0, t, hyy);
-			gim.hxy.getXY(0, 0, t, hxy);
-			for (int y = 0; y < my; y++)
-			for (int x = 0; x < mx; x++) {
-				fxxfxx[x][y] = hxx[x][y] * hxx[x][y];
-				fxyfxy[x][y] = hxy[x][y] * hxy[x][y];
-				fyyfyy[x][y] = hyy[x][y] * hyy[x][y];
-				fxxfyy[x][y] = hxx[x][y] * hyy[x][y];
-				fxxfxy[x][y] = hxx[x][y] * hxy[x][y];
-				fyyfxy[x][y] = hyy[x][y] * hxy[x][y];
-			}
-			walk.progress("Tensor " + t, 75);
-			if (params.sigmaST > 0) {
-				Gaussian[] gaussians = new Gaussian[6];
-				gaussians[0] = new Gaussian(walk, 10, fxxfxx, params.sigmaST, mx, my);
-				gaussians[1] = new Gaussian(walk, 10, fxyfxy, params.sigmaST, mx, my);
-				gaussians[2] = new Gaussian(walk, 10, fyyfyy, params.sigmaST, mx, my);
-				gaussians[3] = new Gaussian(walk, 10, fxxfyy, params.sigmaST, mx, my);
-				gaussians[4] = new Gaussian(walk, 10, fxxfxy, params.sigmaST, mx, my);
-				gaussians[5] = new Gaussian(walk, 10, fyyfxy, params.sigmaST, mx, my);
-				ExecutorService executor = Executors.newFixedThreadPool(6);
-				for(int e=0; e<6; e++)
-				executor.execute(gaussians[e]);
-					executor.shutdown();
-				while (!executor.isTerminated());
+		boolean precision = params.tensorPrecision == OrientationParameters.PRECISION_DOUBLE;
+
+		final TensorBuffer htensor = new TensorBuffer(mx, my, 6, precision);
+
+		walk.progress("Tensor " + (t+1), 0);
+		final float[] fxx = gim.hxx.getSliceFloat(t);
+		final float[] fyy = gim.hyy.getSliceFloat(t);
+		final float[] fxy = gim.hxy.getSliceFloat(t);
+		ComputeScheduler.parallel(my, GRAIN, new ComputeScheduler.Range() {
+			public void process(int lo, int hi) {
+				gim.cancellation.check();
+				double hxx, hyy, hxy;
+				for (int k = lo * mx; k < hi * mx; k++) {
+					hxx = fxx[k];
+					hyy = fyy[k];
+					hxy = fxy[k];
+					htensor.put(k, 0, hxx * hxx);
+					htensor.put(k, 1, hxy * hxy);
+					htensor.put(k, 2, hyy * hyy);
+					htensor.put(k, 3, hxx * hyy);
+					htensor.put(k, 4, hxx * hxy);
+					htensor.put(k, 5, hyy * hxy);
+				}
 			}
-			walk.progress("Tensor " + t, 82);
-			
-			for (int x = 0; x < mx; x++)
-			for (int y = 0; y < my; y++) {
-				htensor[0] = fxxfxx[x][y];
-				htensor[1] = fxyfxy[x][y];
-				htensor[2] = fyyfyy[x][y];
-				htensor[3] = fxxfyy[x][y];
-				htensor[4] = fxxfxy[x][y];
-				htensor[5] = fyyfxy[x][y];
-				
-				hfeatureMax = hessianMaximizer(htensor, NIP);
-				hfeatureMin = hessianMinimizer(htensor, NIP);
-				gim.orientation.putPixel(x, y, t, hfeatureMax[0]);
-				gim.energy.putPixel(x, y, t, hfeatureMax[1]);
-				gim.coherency.putPixel(x, y, t, (hfeatureMax[1] - hfeatureMin[1]) / (hfeatureMax[1] + hfeatureMin[1]));
+		});
+		walk.progress("Tensor " + (t+1), 20);
+		if (params.sigmaST > 0)
+			new Gaussian(walk, 60, htensor, params.sigmaST, gim.cancellation).runParallel();
+		walk.progress("Tensor " + (t+1), 82);
+		
+		final float[] energy = (gim.energy != null ? gim.energy.getSliceFloat(t) : null);
+		final float[] coherency = (gim.coherency != null ? gim.coherency.getSliceFloat(t) : null);
+		final float[] orientation = (gim.orientation != null ? gim.orientation.getSliceFloat(t) : null);
+		ComputeScheduler.parallel(my, GRAIN, new ComputeScheduler.Range() {
+			public void process(int lo, int hi) {
+				gim.cancellation.check();
+				HessianSolver solver = new HessianSolver();
+				double[] h = new double[6];
+				for (int k = lo * mx; k < hi * mx; k++) {
+					for (int c = 0; c < 6; c++)
+						h[c] = htensor.get(k, c);
+					solver.solve(h);
+					if (orientation != null)
+						orientation[k] = (float)solver.getOrientation();
+					if (energy != null)
+						energy[k] = (float)solver.getMaximum();
+					if (coherency != null)
+						coherency[k] = (float)solver.getCoherency();
+				}
 			}
-		}
+		});
 	}
 
 	/**
@@ -282,7 +275,7 @@ public class StructureTensor implements Runnable {
 	 * 
 	 * @author Daniel Sage
 	 */
-	private double computeCoherency(double xx, double yy, double xy, double epsilon) {
+	static double computeCoherency(double xx, double yy, double xy, double epsilon) {
 		double coherency = Math.sqrt((yy - xx) * (yy - xx) + 4.0 * xy * xy) / (xx + yy + epsilon);
 		return coherency;
 	}
@@ -292,210 +285,7 @@ public class StructureTensor implements Runnable {
 	 * 
 	 * @author Daniel Sage
 	 */
-	private double computeOrientation(double xx, double yy, double xy) {
+	static double computeOrientation(double xx, double yy, double xy) {
 		return 0.5 * Math.atan2(2.0 * xy, (yy - xx));
 	}
-	
-	/**
-	 * Maximizes the hessian vector.
-	 * 
-	 * @author Pad Pedram
-	 */
-	private double[] hessianMaximizer(double[] in, int NIP) {
-		double out[] = new double[4];
-		double coefA = in[0] - 4.0 * in[1] + in[2] - 2.0 * in[3];
-		double coefB = 2.0 * in[1] - in[2] + in[3];
-
-		double[] alp = new double [NIP];
-		double[] y = new double [NIP];
-		
-		
-		double ma = -10000;
-		int mi = 0;
-		double amp = 0;
-				
-		for (int i=0; i<NIP; i++) {
-			alp[i] = i*Math.PI/(NIP-1)-Math.PI/2;
-			y[i] = hessianTensorEvaluation(in, alp[i], coefA, coefB);
-			if (y[i]>ma) {
-				ma = y[i];
-				mi = i;
-				amp = alp[mi];
-			}
-		}
-
-		double dy = Double.MAX_VALUE;
-		double ddy = 0;
-		double st = 0;
-		int iteration = 0;
-		boolean flag = false;
-		double amt = 0;
-
-		do {
-			dy = hessianTensorDerivative(in, amp, coefA, coefB);
-			ddy = hessianTensor2Derivative(in, amp, coefA, coefB);
-			flag = false;
-			if (ddy < 0) {
-				st = dy / ddy;
-				if (st < Math.PI) {
-					amt = amp - st;
-					if (hessianTensorEvaluation(in, amp, coefA, coefB) < hessianTensorEvaluation(in, amt, coefA, coefB)) {
-						amp = amt;
-						flag = true;
-					}
-				}
-			}
-			if (!flag) {
-				int k = 0;
-				do {
-					do {
-						etta *= 0.8;
-						st = etta * dy;
-					}
-					while (st > Math.PI);
-					amt = amp + st;
-					k++;
-				}
-				while (hessianTensorEvaluation(in, amp, coefA, coefB) > hessianTensorEvaluation(in, amt, coefA, coefB));
-				amp = amt;
-			}
-			iteration++;
-		}
-		while ((dy > tolerance) && (iteration < maxIteration));
-
-		out[0] = Math.PI * (amp / Math.PI + 1 - Math.ceil(amp / Math.PI + 0.5));
-		out[1] = hessianTensorEvaluation(in, amp, coefA, coefB);
-		out[2] = dy;
-		out[3] = iteration;
-		return out;
-	}
-
-	/**
-	 * Minimizes the hessian vector.
-	 * 
-	 * @author Pad Pedram
-	 */
-	private double[] hessianMinimizer(double[] in, int NIP) {
-		double out[] = new double[4];
-		
-		double coefA = in[0] - 4.0 * in[1] + in[2] - 2.0 * in[3];
-		double coefB = 2.0 * in[1] - in[2] + in[3];
-		double[] alp = new double [NIP];
-		double[] y = new double [NIP];
-		
-		
-		double ma = 10000;
-		int mi = 0;
-		double amp = 0;
-				
-		for (int i=0; i<NIP; i++) {
-			alp[i] = i*Math.PI/(NIP-1)-Math.PI/2;
-			y[i] = hessianTensorEvaluation(in, alp[i], coefA, coefB);
-			if (y[i]<ma) {
-				ma = y[i];
-				mi = i;
-				amp = alp[mi];
-			}
-		}
-
-		double dy = Double.MAX_VALUE;
-		double ddy = 0;
-		double st = 0;
-		int iteration = 0;
-		boolean flag = false;
-		double amt = 0;
-
-		do {
-			dy = hessianTensorDerivative(in, amp, coefA, coefB);
-			ddy = hessianTensor2Derivative(in, amp, coefA, coefB);
-			flag = false;
-			if (ddy > 0) {
-				st = dy / ddy;
-				if (st < Math.PI) {
-					amt = amp - st;
-					if (hessianTensorEvaluation(in, amp, coefA, coefB) > hessianTensorEvaluation(in, amt, coefA, coefB)) {
-						amp = amt;
-						flag = true;
-					}
-				}
-			}
-			if (!flag) {
-				int k = 0;
-				do {
-					do {
-						etta *= 0.8;
-						st = etta * dy;
-					}
-					while (st > Math.PI);
-					amt = amp - st;
-					k++;
-				}
-				while (hessianTensorEvaluation(in, amp, coefA, coefB) < hessianTensorEvaluation(in, amt, coefA, coefB));
-				amp = amt;
-			}
-			iteration++;
-		}
-		while ((dy > tolerance) && (iteration < maxIteration));
-
-		out[0] = Math.PI * (amp / Math.PI + 1 - Math.ceil(amp / Math.PI + 0.5));
-		out[1] = hessianTensorEvaluation(in, amp, coefA, coefB);
-		out[2] = dy;
-		out[3] = iteration;
-
-		return out;
-	}
-
-	/**
-	 * Evaluates the Hessian Tensor value.
-	 * 
-	 * @author Pad Pedram
-	 */
-	private double hessianTensorEvaluation(double[] coef, double alp, double coefA, double coefB) {
-		double cos = Math.cos(alp);
-		double sin = Math.sin(alp);
-		double cos2 = cos * cos;
-		double y =
-				coefA * cos2 * cos2 +
-				2.0 * coefB * cos2 +
-				coef[2] +
-				4.0 * coef[4] * cos2 * cos * sin +
-				4.0 * coef[5] * cos * sin * sin * sin;
-		return y;
-	}
-
-	/**
-	 * Evaluates the Hessian Tensor derivative value.
-	 * 
-	 * @author Pad Pedram
-	 */
-	private double hessianTensorDerivative(double[] coef, double alp, double coefA, double coefB) {
-		double cos = Math.cos(alp);
-		double sin = Math.sin(alp);
-		double cos2 = cos * cos;
-		double dy =
-				-4.0 * coefA * cos2 * cos * sin -
-				4.0 * coefB * cos * sin +
-				4.0 * (5.0 * coef[5] - 3.0 * coef[4]) * cos2 +
-				16.0 * (coef[4] - coef[5]) * cos2 * cos2 -
-				4.0 * coef[5];
-		return dy;
-	}
-
-	/**
-	 * Evaluates the Hessian Tensor second derivative value.
-	 * 
-	 * @author Pad Pedram
-	 */
-	private double hessianTensor2Derivative(double[] coef, double alp, double coefA, double coefB) {
-		double cos = Math.cos(alp);
-		double sin = Math.sin(alp);
-		double cos2 = cos * cos;
-		double ddy =
-				-16.0 * coefA * cos2 * cos2 -
-				8.0 * (5.0 * coef[5] - 3.0 * coef[4]) * cos * sin +
-				4.0 * (3.0 * coef[0] - 16.0 * coef[1] + 5.0 * coef[2] - 8.0 * coef[3]) * cos2 -
-				64.0 * (coef[4] - coef[5]) * cos2 * cos * sin +
-				4.0 * coefB;
-		return ddy;
-	}
-}
\ No newline at end of file
+}
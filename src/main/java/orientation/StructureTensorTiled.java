@@ -0,0 +1,214 @@
+//==============================================================================
+//
+// Project: Directional Image Analysis - OrientationJ plugin
+// 
+// Author: Daniel Sage
+// 
+// Organization: Biomedical Imaging Group (BIG)
+// Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+//
+// Information: 
+// OrientationJ: http://bigwww.epfl.ch/demo/orientation/
+// MonogenicJ: http://bigwww.epfl.ch/demo/monogenic/
+//  
+//
+// Reference on methods and plugin
+// Z. Püspöki, M. Storath, D. Sage, M. Unser
+// "Transforms and Operators for Directional Bioimage Analysis: A Survey," 
+// Advances in Anatomy, Embryology and Cell Biology, vol. 219, Focus on Bio-Image Informatics, 
+// Springer International Publishing, ch. 3, pp. 69-93, May 21, 2016.
+//
+// Reference on applications
+// E. Fonck, G.G. Feigl, J. Fasel, D. Sage, M. Unser, D.A. Ruefenacht, N. Stergiopulos 
+// "Effect of Aging on Elastin Functionality in Human Cerebral Arteries,"
+// Stroke, vol. 40, no. 7, pp. 2552-2556, July 2009.
+//
+// R. Rezakhaniha, A. Agianniotis, J.T.C. Schrauwen, A. Griffa, D. Sage, C.V.C. Bouten, F.N. van de Vosse, M. Unser, N. Stergiopulos
+// "Experimental Investigation of Collagen Waviness and Orientation in the Arterial Adventitia Using Confocal Laser Scanning Microscopy,"
+// Biomechanics and Modeling in Mechanobiology, vol. 11, no. 3-4, pp. 461-473, 2012.
+
+// Conditions of use: You'll be free to use this software for research purposes,
+// but you should not redistribute it without our consent. In addition, we 
+// expect you to include a citation or acknowledgment whenever you present or 
+// publish results that are based on it.
+//
+// History:
+// - Updated (Daniel Sage, 24 January 2011)
+// - Added the Vector field (Daniel Sage, 1 March 2017)
+//
+//==============================================================================
+
+package orientation;
+
+import java.util.concurrent.RecursiveAction;
+
+import additionaluserinterface.WalkBar;
+
+/**
+ * Tiled implementation of the structure tensor based on the 2-components 
+ * gradient vector.
+ * 
+ * Each frame is split into bands of lines which are processed on the 
+ * work-stealing pool of the ComputeScheduler. The three stages run in parallel: the products of the 
+ * gradient, the two passes of the IIR Gaussian (columns then rows), and the 
+ * per-pixel features (energy, coherency, orientation, harris). 
+ * The working buffer is flat and row-major, the 3 components are interleaved 
+ * and smoothed in the same sweep, in float or in double according to the 
+ * tensor precision of the parameters.
+ * The results are identical to the single-threaded engine of 
+ * StructureTensor (TENSOR_SERIAL).
+ */
+public class StructureTensorTiled {
+
+	private static final int STAGE_PRODUCTS	= 0;
+	private static final int STAGE_COLUMNS	= 1;
+	private static final int STAGE_ROWS		= 2;
+	private static final int STAGE_FEATURES	= 3;
+
+	/** Minimum number of lines processed by a task */
+	private static final int GRAIN = 16;
+
+	private WalkBar walk;
+	private GroupImage gim;
+	private OrientationParameters params;
+
+	public StructureTensorTiled(WalkBar walk, GroupImage gim, OrientationParameters params) {
+		this.walk = walk;
+		this.gim = gim;
+		this.params = params;
+	}
+
+	public void run() {
+		for (int t = 0; t < gim.nt; t++)
+			run(t);
+	}
+
+	/**
+	 * Computes the structure tensor of a single frame.
+	 * Several frames can be computed concurrently, each one uses its own buffers.
+	 */
+	public void run(int t) {
+		int mx = gim.nx;
+		int my = gim.ny;
+		Frame frame = new Frame(t, mx, my, params.tensorPrecision == OrientationParameters.PRECISION_DOUBLE);
+		walk.progress("Tensor " + (t+1), 0);
+		ComputeScheduler.invoke(new Band(frame, STAGE_PRODUCTS, 0, my));
+		walk.progress("Tensor " + (t+1), 15);
+		if (params.sigmaST > 0) {
+			frame.gaussian = new Gaussian(walk, 0, frame.tensor, params.sigmaST, gim.cancellation);
+			ComputeScheduler.invoke(new Band(frame, STAGE_COLUMNS, 0, mx));
+			ComputeScheduler.invoke(new Band(frame, STAGE_ROWS, 0, my));
+		}
+		walk.progress("Tensor " + (t+1), 75);
+		ComputeScheduler.invoke(new Band(frame, STAGE_FEATURES, 0, my));
+	}
+
+	/**
+	 * Stage 1: products of the gradient on the rows [y0, y1[.
+	 */
+	private void products(Frame frame, int y0, int y1) {
+		int mx = gim.nx;
+		float fx[] = gim.gx.getSliceFloat(frame.t);
+		float fy[] = gim.gy.getSliceFloat(frame.t);
+		double gx, gy;
+		for (int k = y0 * mx; k < y1 * mx; k++) {
+			gx = fx[k];
+			gy = fy[k];
+			frame.tensor.put(k, StructureTensor.XX, gx * gx);
+			frame.tensor.put(k, StructureTensor.XY, gx * gy);
+			frame.tensor.put(k, StructureTensor.YY, gy * gy);
+		}
+	}
+
+	/**
+	 * Stage 3: features of the structure tensor on the rows [y0, y1[.
+	 */
+	private void features(Frame frame, int y0, int y1) {
+		int mx = gim.nx;
+		int t = frame.t;
+		double K = params.harrisK;
+		double epsilon = params.epsilon;
+		float energy[] = (gim.energy != null ? gim.energy.getSliceFloat(t) : null);
+		float coherency[] = (gim.coherency != null ? gim.coherency.getSliceFloat(t) : null);
+		float orientation[] = (gim.orientation != null ? gim.orientation.getSliceFloat(t) : null);
+		float corner[] = (gim.harris != null ? gim.harris.getSliceFloat(t) : null);
+		double xx, yy, xy;
+		for (int y = y0; y < y1; y++) {
+			int k = y * mx;
+			for (int x = 0; x < mx; x++, k++) {
+				xx = frame.tensor.get(k, StructureTensor.XX);
+				yy = frame.tensor.get(k, StructureTensor.YY);
+				xy = frame.tensor.get(k, StructureTensor.XY);
+				if (energy != null)
+					energy[k] = (float)(xx + yy);
+				if (coherency != null)
+					coherency[k] = (float)StructureTensor.computeCoherency(xx, yy, xy, epsilon);
+				if (orientation != null)
+					orientation[k] = (float)StructureTensor.computeOrientation(xx, yy, xy);
+				if (corner != null)
+					corner[k] = (float)(xx * yy - xy * xy - K * (xx + yy) * (xx + yy));
+			}
+		}
+	}
+
+	/**
+	 * Working buffers of one frame.
+	 */
+	private static class Frame {
+		private int t;
+		private TensorBuffer tensor;
+		private Gaussian gaussian;
+
+		public Frame(int t, int mx, int my, boolean doublePrecision) {
+			this.t = t;
+			tensor = new TensorBuffer(mx, my, 3, doublePrecision);
+		}
+	}
+
+	/**
+	 * Recursive task splitting a range of lines until the grain size.
+	 */
+	private class Band extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		private Frame frame;
+		private int stage;
+		private int lo;
+		private int hi;
+
+		public Band(Frame frame, int stage, int lo, int hi) {
+			this.frame = frame;
+			this.stage = stage;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo <= GRAIN) {
+				process();
+				return;
+			}
+			int mid = (lo + hi) >>> 1;
+			invokeAll(new Band(frame, stage, lo, mid), new Band(frame, stage, mid, hi));
+		}
+
+		private void process() {
+			gim.cancellation.check();
+			switch (stage) {
+			case STAGE_PRODUCTS:
+				products(frame, lo, hi);
+				break;
+			case STAGE_COLUMNS:
+				frame.gaussian.filterColumns(lo, hi);
+				break;
+			case STAGE_ROWS:
+				frame.gaussian.filterRows(lo, hi);
+				break;
+			case STAGE_FEATURES:
+				features(frame, lo, hi);
+				break;
+			}
+		}
+	}
+}
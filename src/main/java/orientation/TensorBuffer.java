@@ -0,0 +1,189 @@
+//==============================================================================
+//
+// Project: Directional Image Analysis - OrientationJ plugin
+// 
+// Author: Daniel Sage
+// 
+// Organization: Biomedical Imaging Group (BIG)
+// Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+//
+// Information: 
+// OrientationJ: http://bigwww.epfl.ch/demo/orientation/
+// MonogenicJ: http://bigwww.epfl.ch/demo/monogenic/
+//  
+//
+// Reference on methods and plugin
+// Z. Püspöki, M. Storath, D. Sage, M. Unser
+// "Transforms and Operators for Directional Bioimage Analysis: A Survey," 
+// Advances in Anatomy, Embryology and Cell Biology, vol. 219, Focus on Bio-Image Informatics, 
+// Springer International Publishing, ch. 3, pp. 69-93, May 21, 2016.
+//
+// Reference on applications
+// E. Fonck, G.G. Feigl, J. Fasel, D. Sage, M. Unser, D.A. Ruefenacht, N. Stergiopulos 
+// "Effect of Aging on Elastin Functionality in Human Cerebral Arteries,"
+// Stroke, vol. 40, no. 7, pp. 2552-2556, July 2009.
+//
+// R. Rezakhaniha, A. Agianniotis, J.T.C. Schrauwen, A. Griffa, D. Sage, C.V.C. Bouten, F.N. van de Vosse, M. Unser, N. Stergiopulos
+// "Experimental Investigation of Collagen Waviness and Orientation in the Arterial Adventitia Using Confocal Laser Scanning Microscopy,"
+// Biomechanics and Modeling in Mechanobiology, vol. 11, no. 3-4, pp. 461-473, 2012.
+
+// Conditions of use: You'll be free to use this software for research purposes,
+// but you should not redistribute it without our consent. In addition, we 
+// expect you to include a citation or acknowledgment whenever you present or 
+// publish results that are based on it.
+//
+// History:
+// - Updated (Daniel Sage, 24 January 2011)
+// - Added the Vector field (Daniel Sage, 1 March 2017)
+//
+//==============================================================================
+
+package orientation;
+
+/**
+ * Flat working buffer of a frame, stored row-major (index x + y*nx).
+ * 
+ * A buffer can hold several channels interleaved, the channel c of the pixel 
+ * k is stored at k*channels + c, so a filter sweeps all the channels in the 
+ * same pass over memory.
+ * The samples are stored in float or, to compare the precision, in double.
+ * The lines are read and written by blocks of double so the filters 
+ * accumulate in double whatever the storage.
+ */
+public class TensorBuffer {
+
+	private int nx;
+	private int ny;
+	private int channels;
+	private float fdata[];
+	private double ddata[];
+
+	/**
+	 * Constructor, allocates a buffer of nx*ny samples in float or in double.
+	 */
+	public TensorBuffer(int nx, int ny, boolean doublePrecision) {
+		this(nx, ny, 1, doublePrecision);
+	}
+
+	/**
+	 * Constructor, allocates a buffer of nx*ny pixels of interleaved 
+	 * channels in float or in double.
+	 */
+	public TensorBuffer(int nx, int ny, int channels, boolean doublePrecision) {
+		this.nx = nx;
+		this.ny = ny;
+		this.channels = channels;
+		if (doublePrecision)
+			ddata = new double[nx*ny*channels];
+		else
+			fdata = new float[nx*ny*channels];
+	}
+
+	public int getWidth() {
+		return nx;
+	}
+
+	public int getHeight() {
+		return ny;
+	}
+
+	public int getChannels() {
+		return channels;
+	}
+
+	public boolean isDoublePrecision() {
+		return ddata != null;
+	}
+
+	public double get(int k) {
+		return (fdata != null ? fdata[k] : ddata[k]);
+	}
+
+	public void put(int k, double value) {
+		if (fdata != null)
+			fdata[k] = (float)value;
+		else
+			ddata[k] = value;
+	}
+
+	/**
+	 * Returns the channel c of the pixel k.
+	 */
+	public double get(int k, int c) {
+		return get(k*channels + c);
+	}
+
+	/**
+	 * Sets the channel c of the pixel k.
+	 */
+	public void put(int k, int c, double value) {
+		put(k*channels + c, value);
+	}
+
+	/**
+	 * Copies the columns [x, x+lanes[ into block, the channel c of the 
+	 * sample y of the column x+l is stored at 
+	 * block[(y*lanes + l)*channels + c].
+	 */
+	public void getColumns(int x, int lanes, double block[]) {
+		int w = lanes * channels;
+		for (int y=0, k=x*channels, b=0; y<ny; y++, k+=nx*channels, b+=w) {
+			if (fdata != null)
+				for (int l=0; l<w; l++)
+					block[b+l] = fdata[k+l];
+			else
+				System.arraycopy(ddata, k, block, b, w);
+		}
+	}
+
+	/**
+	 * Copies the block into the columns [x, x+lanes[.
+	 */
+	public void putColumns(int x, int lanes, double block[]) {
+		int w = lanes * channels;
+		for (int y=0, k=x*channels, b=0; y<ny; y++, k+=nx*channels, b+=w) {
+			if (fdata != null)
+				for (int l=0; l<w; l++)
+					fdata[k+l] = (float)block[b+l];
+			else
+				System.arraycopy(block, b, ddata, k, w);
+		}
+	}
+
+	/**
+	 * Copies the rows [y, y+lanes[ into block, the channel c of the sample x 
+	 * of the row y+l is stored at block[(x*lanes + l)*channels + c].
+	 */
+	public void getRows(int y, int lanes, double block[]) {
+		int w = lanes * channels;
+		for (int l=0; l<lanes; l++) {
+			int k = (y+l)*nx*channels;
+			for (int x=0, b=l*channels; x<nx; x++, b+=w, k+=channels) {
+				if (fdata != null)
+					for (int c=0; c<channels; c++)
+						block[b+c] = fdata[k+c];
+				else
+					for (int c=0; c<channels; c++)
+						block[b+c] = ddata[k+c];
+			}
+		}
+	}
+
+	/**
+	 * Copies the block into the rows [y, y+lanes[.
+	 */
+	public void putRows(int y, int lanes, double block[]) {
+		int w = lanes * channels;
+		for (int l=0; l<lanes; l++) {
+			int k = (y+l)*nx*channels;
+			for (int x=0, b=l*channels; x<nx; x++, b+=w, k+=channels) {
+				if (fdata != null)
+					for (int c=0; c<channels; c++)
+						fdata[k+c] = (float)block[b+c];
+				else
+					for (int c=0; c<channels; c++)
+						ddata[k+c] = block[b+c];
+			}
+		}
+	}
+}
@@ -88,6 +88,7 @@ public class AnalysisDialog extends JDialog implements ActionListener, ChangeLis
 	private Settings				settings				= new Settings("OrientationJ",
 			IJ.getDirectory("plugins") + "OrientationJ.txt");
 	private Thread					thread					= null;
+	private volatile OrientationProcess process				= null;
 	protected int					countRun				= 0;
 
 	private String[]				gradientsOperators		= new String[] { "Cubic Spline Gradient (best)",
@@ -364,6 +365,7 @@ public class AnalysisDialog extends JDialog implements ActionListener, ChangeLis
 		if (e.getSource() == walk.getButtonClose()) {
 			settings.storeRecordedItems();
 			params.store(settings);
+			cancelProcess();
 			dispose();
 		}
 		for (int k = 0; k < OrientationParameters.NB_FEATURES; k++) {
@@ -494,8 +496,13 @@ public class AnalysisDialog extends JDialog implements ActionListener, ChangeLis
 		Cursor cursor = getCursor();
 		setCursor(new Cursor(Cursor.WAIT_CURSOR));
 		OrientationProcess process = new OrientationProcess(walk, source, params);
-		process.start();
-		while (process.isAlive()) {
+		this.process = process;
+		process.run();
+		this.process = null;
+		if (process.isCancelled()) {
+			setCursor(cursor);
+			thread = null;
+			return;
 		}
 
 		gim = process.getGroupImage();
@@ -601,13 +608,14 @@ public class AnalysisDialog extends JDialog implements ActionListener, ChangeLis
 					bnShow[OrientationParameters.TENSOR_ENERGY].setEnabled(gim.energy != null);
 					bnShow[OrientationParameters.HARRIS].setEnabled(gim.harris != null);
 					bnShow[OrientationParameters.SURVEY].setEnabled(gim != null);
-					bnShow[OrientationParameters.DIST_HISTO].setEnabled(gim != null);
-					bnShow[OrientationParameters.DIST_MASK].setEnabled(gim != null);
-					bnShow[OrientationParameters.DIST_ORIENTATION].setEnabled(gim != null);
-					bnShow[OrientationParameters.DIST_COLOR].setEnabled(gim != null);
+					boolean tensor = gim.orientation != null && gim.coherency != null && gim.energy != null;
+					bnShow[OrientationParameters.DIST_HISTO].setEnabled(tensor);
+					bnShow[OrientationParameters.DIST_MASK].setEnabled(tensor);
+					bnShow[OrientationParameters.DIST_ORIENTATION].setEnabled(tensor);
+					bnShow[OrientationParameters.DIST_COLOR].setEnabled(tensor);
 					bnDetect.setEnabled(gim.harris != null);
 					bnKMeans.setEnabled(gim.orientation != null);
-					bnVectors.setEnabled(gim.orientation != null);
+					bnVectors.setEnabled(tensor);
 				} else {
 					bnDetect.setEnabled(false);
 					bnKMeans.setEnabled(false);
@@ -651,6 +659,14 @@ public class AnalysisDialog extends JDialog implements ActionListener, ChangeLis
 		options += "log=" + spnLoG.get() + " ";
 		options += "tensor=" + spnST.get() + " ";
 		options += "gradient=" + cmbGradient.getSelectedIndex() + " ";
+		if (cmbGradient.getSelectedIndex() == OrientationParameters.GRADIENT_GAUSSIAN)
+			options += "sigma-gradient=" + params.sigmaGradient + " ";
+		if (cmbGradient.getSelectedIndex() == OrientationParameters.HESSIAN && params.sigmaHessian > 0)
+			options += "sigma-hessian=" + params.sigmaHessian + " ";
+		if (params.tensorPrecision == OrientationParameters.PRECISION_DOUBLE)
+			options += "precision=double ";
+		if (params.framesInFlight != OrientationParameters.FRAMES_IN_FLIGHT)
+			options += "frames-in-flight=" + params.framesInFlight + " ";
 
 		String plugin = "OrientationJ " + params.getServiceName();
 
@@ -701,9 +717,19 @@ public class AnalysisDialog extends JDialog implements ActionListener, ChangeLis
 	}
 
 	public void windowClosing(WindowEvent e) {
+		cancelProcess();
 		dispose();
 	}
 
+	/**
+	 * Cancels the running computation, if any.
+	 */
+	private void cancelProcess() {
+		OrientationProcess running = process;
+		if (running != null)
+			running.cancel();
+	}
+
 	/**
 	 * 
 	 */
@@ -40,6 +40,7 @@
 package riesz;
 
 import fft.ComplexSignal;
+import fft.FilterBank;
 import ij.IJ;
 import imageware.Builder;
 import imageware.ImageWare;
@@ -49,29 +50,31 @@ public class RieszTransform {
 	private int nx;
 	private int ny;
 	private RieszFilter filter;
+	private FilterBank bank;
 	
 	public RieszTransform(int nx, int ny, int order, boolean cancelDC) {
 		this.nx = nx;
 		this.ny = ny;
 		filter = new RieszFilter(nx, ny, order, cancelDC);
+		ComplexSignal half[] = new ComplexSignal[filter.getChannels()];
+		for(int k=0; k<half.length; k++)
+			half[k] = FilterBank.getHermitianHalf(filter.getAnalysis(k));
+		bank = new FilterBank(nx, ny, half);
 	}
 	
 	/**
+	* The spectrum of the real image is computed on the half plane and 
+	* filtered by the bank of Riesz filters, built once for all the frames.
 	*/
 	public ImageWare[] analysis(ImageWare image) {
 		int N = filter.getChannels();
 		double[] in = (image.convert(ImageWare.DOUBLE)).getSliceDouble(0);
-		ComplexSignal sin = new ComplexSignal(in, nx, ny);
-		ComplexSignal fin = fft.FFT2D.transform(sin);
+		double channels[][] = bank.analysis(in);
 		
 		ImageWare channelsReal[] = new ImageWare[N];
-	
 		for(int k=0; k<N; k++) {
 			channelsReal[k] = Builder.create(nx, ny, 1, ImageWare.DOUBLE);
-			ComplexSignal fcurr = filter.getAnalysis(k);
-			ComplexSignal fg = ComplexSignal.multiply(fin, fcurr);
-			ComplexSignal g = fft.FFT2D.inverse(fg);
-			storeReal(g, channelsReal[k]);
+			storeReal(channels[k], channelsReal[k]);
 		}
 		return channelsReal;
 	}
@@ -85,20 +88,11 @@ public class RieszTransform {
 			return null;
 		}
 
-		ComplexSignal csum = new ComplexSignal(nx, ny);
-			
-		for(int k=0; k<N; k++) {
-			ComplexSignal fc = new ComplexSignal(channels[k].getSliceDouble(0), nx, ny);
-			ComplexSignal fg = fft.FFT2D.transform(fc);
-			ComplexSignal fi = ComplexSignal.multiply(fg, filter.getSynthesis(k));
-			for(int i=0; i<nx*ny; i++) {
-				csum.real[i] += fi.real[i];
-				csum.imag[i] += fi.imag[i];
-			}
-		}
-		ComplexSignal rsum = fft.FFT2D.inverse(csum);
+		double in[][] = new double[N][];
+		for(int k=0; k<N; k++)
+			in[k] = channels[k].getSliceDouble(0);
 		ImageWare out = Builder.create(nx, ny, 1, ImageWare.DOUBLE);
-		storeReal(rsum, out);
+		storeReal(bank.synthesis(in), out);
 		return out;
 	}
 
@@ -107,14 +101,21 @@ public class RieszTransform {
 	public RieszFilter getFilters() {
 		return filter;
 	}
+
+	/**
+	* Returns the bank of the analysis filters, shared by all the frames.
+	*/
+	public FilterBank getFilterBank() {
+		return bank;
+	}
 		
 	/**
 	*/
-	private void storeReal(ComplexSignal signal, ImageWare channel) {
+	private void storeReal(double signal[], ImageWare channel) {
 		int nx = channel.getWidth();
 		int ny = channel.getHeight();
 		double data[] = channel.getSliceDouble(0);
-		System.arraycopy(signal.real, 0, data, 0, nx*ny);
+		System.arraycopy(signal, 0, data, 0, nx*ny);
 	}
 
 }
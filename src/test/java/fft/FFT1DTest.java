@@ -0,0 +1,177 @@
+//==============================================================================
+//
+// Project: Directional Image Analysis - OrientationJ plugin
+// 
+// Author: Daniel Sage
+// 
+// Organization: Biomedical Imaging Group (BIG)
+// Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+//
+// Information: 
+// OrientationJ: http://bigwww.epfl.ch/demo/orientation/
+// MonogenicJ: http://bigwww.epfl.ch/demo/monogenic/
+//  
+//
+// Reference on methods and plugin
+// Z. Püspöki, M. Storath, D. Sage, M. Unser
+// "Transforms and Operators for Directional Bioimage Analysis: A Survey," 
+// Advances in Anatomy, Embryology and Cell Biology, vol. 219, Focus on Bio-Image Informatics, 
+// Springer International Publishing, ch. 3, pp. 69-93, May 21, 2016.
+//
+// Reference on applications
+// E. Fonck, G.G. Feigl, J. Fasel, D. Sage, M. Unser, D.A. Ruefenacht, N. Stergiopulos 
+// "Effect of Aging on Elastin Functionality in Human Cerebral Arteries,"
+// Stroke, vol. 40, no. 7, pp. 2552-2556, July 2009.
+//
+// R. Rezakhaniha, A. Agianniotis, J.T.C. Schrauwen, A. Griffa, D. Sage, C.V.C. Bouten, F.N. van de Vosse, M. Unser, N. Stergiopulos
+// "Experimental Investigation of Collagen Waviness and Orientation in the Arterial Adventitia Using Confocal Laser Scanning Microscopy,"
+// Biomechanics and Modeling in Mechanobiology, vol. 11, no. 3-4, pp. 461-473, 2012.
+
+// Conditions of use: You'll be free to use this software for research purposes,
+// but you should not redistribute it without our consent. In addition, we 
+// expect you to include a citation or acknowledgment whenever you present or 
+// publish results that are based on it.
+//
+// History:
+// - Updated (Daniel Sage, 24 January 2011)
+// - Added the Vector field (Daniel Sage, 1 March 2017)
+//
+//==============================================================================
+
+package fft;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * The radix-4 kernel of FFT1D must give the transform of the radix-2 
+ * Cooley-Tukey kernel it replaced, kept here as the reference, on all the 
+ * powers of two, up to round-off.
+ */
+public class FFT1DTest {
+
+	private static final double TOLERANCE = 1e-13;
+
+	@Test
+	public void radix4MatchesRadix2() {
+		for (int size=2; size<=16384; size*=2) {
+			double diff = difference(size, 0);
+			assertTrue("size " + size + ": " + diff, diff < TOLERANCE);
+		}
+	}
+
+	@Test
+	public void radix4MatchesRadix2WithShift() {
+		for (int size=2; size<=1024; size*=2) {
+			double diff = difference(size, 3);
+			assertTrue("size " + size + ": " + diff, diff < TOLERANCE);
+		}
+	}
+
+	/**
+	* Returns the largest difference between the radix-2 and the radix-4 
+	* transforms of a random signal of the given size, starting at shift, 
+	* relative to the largest magnitude of the output.
+	*/
+	private static double difference(int size, int shift) {
+		double re2[] = createSignal(size+shift, 1);
+		double im2[] = createSignal(size+shift, 2);
+		double re4[] = re2.clone();
+		double im4[] = im2.clone();
+		new Radix2(size).transform(re2, im2, size, shift);
+		new FFT1D(size).transform(re4, im4, size, shift);
+		double max = 0.0;
+		double diff = 0.0;
+		for (int i=shift; i<shift+size; i++) {
+			max = Math.max(max, Math.hypot(re2[i], im2[i]));
+			diff = Math.max(diff, Math.hypot(re2[i]-re4[i], im2[i]-im4[i]));
+		}
+		return diff / max;
+	}
+
+	private static double[] createSignal(int size, long seed) {
+		Random random = new Random(seed);
+		double signal[] = new double[size];
+		for (int i=0; i<size; i++)
+			signal[i] = random.nextDouble() - 0.5;
+		return signal;
+	}
+
+	private static int log2(int size) {
+		int m = 0;
+		while ((1<<m) < size)
+			m++;
+		return Math.max(1, m);
+	}
+
+	/**
+	* Radix-2 decimation-in-time Cooley-Tukey kernel of FFT1D before the 
+	* radix-4 kernel, with its table W^i = exp(-2 pi i / n).
+	*/
+	private static class Radix2 {
+
+		private int n;
+		private int m;
+		private double Rearg[];
+		private double Imarg[];
+
+		Radix2(int size) {
+			n = size;
+			m = log2(size);
+			Rearg = new double[n];
+			Imarg = new double[n];
+			double fact = 2.0*Math.PI/(double)n;
+			for (int i=0; i<n; i++) {
+				double arg = fact*(double)i;
+				Rearg[i] = Math.cos(arg);
+				Imarg[i] = -Math.sin(arg);
+			}
+		}
+
+		void transform(double Re[], double Im[], int size, int shift) {
+			double Retmp, Imtmp;
+			int i, j, k, stepsize, shifter;
+			int i_j, i_j_s;
+
+			// bit inversion
+			for (i=j=shift; i<shift+n-1; i++) {
+				if (i<j) {
+					Retmp=Re[i]; Imtmp=Im[i];
+					Re[i]=Re[j]; Im[i]=Im[j];
+					Re[j]=Retmp; Im[j]=Imtmp;
+				}
+				k=n>>1;
+				while (k+shift<=j) {
+					j-=k;
+					k/=2;
+				}
+				j+=k;
+			}
+
+			// Perform the FFT
+			for (stepsize=1,shifter=m-1; stepsize<n; stepsize<<=1,--shifter) {
+				for (j=shift; j<shift+n; j+=stepsize<<1) {
+					for (i=0; i<stepsize; i++) {
+						i_j=i+j;
+						i_j_s=i_j+stepsize;
+						if (i>0) {
+							Retmp = Rearg[i<<shifter]*Re[i_j_s]-Imarg[i<<shifter]*Im[i_j_s];
+							Im[i_j_s] = Rearg[i<<shifter]*Im[i_j_s]+Imarg[i<<shifter]*Re[i_j_s];
+							Re[i_j_s] = Retmp;
+						}
+						Retmp = Re[i_j] - Re[i_j_s];
+						Imtmp = Im[i_j] - Im[i_j_s];
+						Re[i_j] += Re[i_j_s];
+						Im[i_j] += Im[i_j_s];
+						Re[i_j_s] = Retmp;
+						Im[i_j_s] = Imtmp;
+					}
+				}
+			}
+		}
+	}
+
+}
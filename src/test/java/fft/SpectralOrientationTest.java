@@ -0,0 +1,160 @@
+//==============================================================================
+//
+// Project: Directional Image Analysis - OrientationJ plugin
+// 
+// Author: Daniel Sage
+// 
+// Organization: Biomedical Imaging Group (BIG)
+// Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+//
+// Information: 
+// OrientationJ: http://bigwww.epfl.ch/demo/orientation/
+// MonogenicJ: http://bigwww.epfl.ch/demo/monogenic/
+//  
+//
+// Reference on methods and plugin
+// Z. Püspöki, M. Storath, D. Sage, M. Unser
+// "Transforms and Operators for Directional Bioimage Analysis: A Survey," 
+// Advances in Anatomy, Embryology and Cell Biology, vol. 219, Focus on Bio-Image Informatics, 
+// Springer International Publishing, ch. 3, pp. 69-93, May 21, 2016.
+//
+// Reference on applications
+// E. Fonck, G.G. Feigl, J. Fasel, D. Sage, M. Unser, D.A. Ruefenacht, N. Stergiopulos 
+// "Effect of Aging on Elastin Functionality in Human Cerebral Arteries,"
+// Stroke, vol. 40, no. 7, pp. 2552-2556, July 2009.
+//
+// R. Rezakhaniha, A. Agianniotis, J.T.C. Schrauwen, A. Griffa, D. Sage, C.V.C. Bouten, F.N. van de Vosse, M. Unser, N. Stergiopulos
+// "Experimental Investigation of Collagen Waviness and Orientation in the Arterial Adventitia Using Confocal Laser Scanning Microscopy,"
+// Biomechanics and Modeling in Mechanobiology, vol. 11, no. 3-4, pp. 461-473, 2012.
+
+// Conditions of use: You'll be free to use this software for research purposes,
+// but you should not redistribute it without our consent. In addition, we 
+// expect you to include a citation or acknowledgment whenever you present or 
+// publish results that are based on it.
+//
+// History:
+// - Updated (Daniel Sage, 24 January 2011)
+// - Added the Vector field (Daniel Sage, 1 March 2017)
+//
+//==============================================================================
+
+package fft;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import additionaluserinterface.WalkBar;
+import imageware.Builder;
+import imageware.ImageWare;
+import orientation.Gradient;
+import orientation.GroupImage;
+import orientation.OrientationParameters;
+import orientation.OrientationProcess;
+import orientation.OrientationService;
+import orientation.StructureTensor;
+
+/**
+ * SpectralOrientation on oriented stripes, against the structure tensor of 
+ * the plugin: the angle convention of StructureTensor.computeOrientation 
+ * and the 180 bins of OrientationProcess.distribution(), the bin a for the 
+ * orientation a-90 degrees, as written by saveDistribution().
+ */
+public class SpectralOrientationTest {
+
+	private static final int SIZE = 128;
+	private static final double PERIOD = 8.0;
+	private static final double ANGLES[] = {0.0, 30.0, 60.0, 90.0, 120.0, -45.0};
+
+	@Test
+	public void dominantDirection() {
+		for (double angle : ANGLES) {
+			SpectralOrientation spectral = new SpectralOrientation();
+			spectral.run(createStripes(angle), SIZE, SIZE);
+			assertAngle("spectral " + angle, angle, spectral.getDominantDirection(), 0.5);
+			assertEquals("coherency " + angle, 1.0, spectral.getCoherency(), 0.05);
+		}
+	}
+
+	@Test
+	public void sameConventionAsStructureTensor() {
+		for (double angle : ANGLES) {
+			GroupImage gim = analysis(createStripes(angle));
+			double tensor = Math.toDegrees(gim.orientation.getPixel(SIZE/2, SIZE/2, 0));
+			assertAngle("tensor " + angle, angle, tensor, 0.5);
+			SpectralOrientation spectral = new SpectralOrientation();
+			spectral.run(createStripes(angle), SIZE, SIZE);
+			assertAngle("spectral " + angle, tensor, spectral.getDominantDirection(), 0.5);
+		}
+	}
+
+	@Test
+	public void sameLayoutAsDistribution() {
+		for (double angle : ANGLES) {
+			GroupImage gim = analysis(createStripes(angle));
+			OrientationParameters params = createParameters();
+			float histo[] = new OrientationProcess(gim, params).distribution();
+			SpectralOrientation spectral = new SpectralOrientation();
+			float distribution[] = spectral.run(createStripes(angle), SIZE, SIZE);
+			assertEquals("bins", histo.length, distribution.length);
+			assertEquals("bins", SpectralOrientation.BINS, distribution.length);
+			int peak = argmax(distribution);
+			assertEquals("peak " + angle, argmax(histo), peak, 1);
+			assertAngle("bin " + angle, angle, peak - 90, 1.0);
+			double sum = 0.0;
+			for (int a=0; a<distribution.length; a++)
+				sum += distribution[a];
+			assertEquals("sum " + angle, 1.0, sum, 1e-5);
+		}
+	}
+
+	/**
+	 * Stripes of structures along (cos a, -sin a), y downwards: the angle 
+	 * is counterclockwise on the screen.
+	 */
+	private double[] createStripes(double angle) {
+		double nx = Math.sin(Math.toRadians(angle));
+		double ny = Math.cos(Math.toRadians(angle));
+		double image[] = new double[SIZE*SIZE];
+		for (int y=0; y<SIZE; y++)
+			for (int x=0; x<SIZE; x++)
+				image[x + y*SIZE] = 100.0 + 50.0 * Math.cos(2.0 * Math.PI * (x*nx + y*ny) / PERIOD);
+		return image;
+	}
+
+	private OrientationParameters createParameters() {
+		return new OrientationParameters(OrientationService.DISTRIBUTION);
+	}
+
+	private GroupImage analysis(double image[]) {
+		WalkBar walk = new WalkBar();
+		OrientationParameters params = createParameters();
+		ImageWare source = Builder.create(SIZE, SIZE, 1, ImageWare.DOUBLE);
+		System.arraycopy(image, 0, source.getSliceDouble(0), 0, SIZE*SIZE);
+		GroupImage gim = new GroupImage(walk, source, params, true);
+		new Gradient(walk, gim, params).run();
+		new StructureTensor(walk, gim, params).run();
+		return gim;
+	}
+
+	private int argmax(float values[]) {
+		int arg = 0;
+		for (int a=1; a<values.length; a++)
+			if (values[a] > values[arg])
+				arg = a;
+		return arg;
+	}
+
+	/**
+	 * Angles in degrees, equal modulo 180.
+	 */
+	private void assertAngle(String message, double expected, double actual, double tolerance) {
+		double diff = (actual - expected) % 180.0;
+		if (diff > 90.0)
+			diff -= 180.0;
+		if (diff < -90.0)
+			diff += 180.0;
+		assertEquals(message, 0.0, diff, tolerance);
+	}
+
+}
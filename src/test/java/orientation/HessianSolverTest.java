@@ -0,0 +1,137 @@
+//==============================================================================
+//
+// Project: Directional Image Analysis - OrientationJ plugin
+// 
+// Author: Daniel Sage
+// 
+// Organization: Biomedical Imaging Group (BIG)
+// Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+//
+// Information: 
+// OrientationJ: http://bigwww.epfl.ch/demo/orientation/
+// MonogenicJ: http://bigwww.epfl.ch/demo/monogenic/
+//  
+//
+// Reference on methods and plugin
+// Z. Püspöki, M. Storath, D. Sage, M. Unser
+// "Transforms and Operators for Directional Bioimage Analysis: A Survey," 
+// Advances in Anatomy, Embryology and Cell Biology, vol. 219, Focus on Bio-Image Informatics, 
+// Springer International Publishing, ch. 3, pp. 69-93, May 21, 2016.
+//
+// Reference on applications
+// E. Fonck, G.G. Feigl, J. Fasel, D. Sage, M. Unser, D.A. Ruefenacht, N. Stergiopulos 
+// "Effect of Aging on Elastin Functionality in Human Cerebral Arteries,"
+// Stroke, vol. 40, no. 7, pp. 2552-2556, July 2009.
+//
+// R. Rezakhaniha, A. Agianniotis, J.T.C. Schrauwen, A. Griffa, D. Sage, C.V.C. Bouten, F.N. van de Vosse, M. Unser, N. Stergiopulos
+// "Experimental Investigation of Collagen Waviness and Orientation in the Arterial Adventitia Using Confocal Laser Scanning Microscopy,"
+// Biomechanics and Modeling in Mechanobiology, vol. 11, no. 3-4, pp. 461-473, 2012.
+
+// Conditions of use: You'll be free to use this software for research purposes,
+// but you should not redistribute it without our consent. In addition, we 
+// expect you to include a citation or acknowledgment whenever you present or 
+// publish results that are based on it.
+//
+// History:
+// - Updated (Daniel Sage, 24 January 2011)
+// - Added the Vector field (Daniel Sage, 1 March 2017)
+//
+//==============================================================================
+
+package orientation;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * The extrema of HessianSolver must be those of a dense sampling of the 
+ * energy on the half circle, on random tensors with a cross term from the 
+ * scale of the diagonal terms down to zero, and rotated by 45 degrees.
+ */
+public class HessianSolverTest {
+
+	private static final int SAMPLES = 4000;
+	private static final int TENSORS = 2000;
+	private static final double TOLERANCE = 1e-5;
+
+	@Test
+	public void random() {
+		check(1.0, false);
+	}
+
+	@Test
+	public void nearDiagonal() {
+		for (double cross : new double[] {1e-3, 1e-4, 1e-6, 1e-9, 0.0})
+			check(cross, false);
+	}
+
+	@Test
+	public void nearDiagonalRotated() {
+		for (double cross : new double[] {1e-3, 1e-6, 0.0})
+			check(cross, true);
+	}
+
+	private void check(double cross, boolean rotated) {
+		Random random = new Random(1);
+		HessianSolver solver = new HessianSolver();
+		double in[] = new double[6];
+		for (int n = 0; n < TENSORS; n++) {
+			createTensor(random, cross, rotated, in);
+			double max = -Double.MAX_VALUE;
+			double min = Double.MAX_VALUE;
+			for (int i = 0; i < SAMPLES; i++) {
+				double e = energy(in, -0.5 * Math.PI + Math.PI * i / SAMPLES);
+				max = Math.max(max, e);
+				min = Math.min(min, e);
+			}
+			solver.solve(in);
+			String message = "cross " + cross + " tensor " + n;
+			double tolerance = TOLERANCE * max;
+			assertEquals(message + " maximum", max, solver.getMaximum(), tolerance);
+			assertEquals(message + " minimum", min, solver.getMinimum(), tolerance);
+			assertEquals(message + " orientation", max, energy(in, solver.getOrientation()), tolerance);
+		}
+	}
+
+	/**
+	 * Sum of 1 to 6 products of random Hessians, the diagonal terms with 
+	 * scales spread over some decades, the cross term relative to them.
+	 */
+	private void createTensor(Random random, double cross, boolean rotated, double in[]) {
+		for (int c = 0; c < 6; c++)
+			in[c] = 0.0;
+		double sx = Math.exp(3.0 * random.nextGaussian());
+		double sy = Math.exp(3.0 * random.nextGaussian());
+		int count = 1 + random.nextInt(6);
+		for (int k = 0; k < count; k++) {
+			double fxx = sx * random.nextGaussian();
+			double fyy = sy * random.nextGaussian();
+			double fxy = cross * (sx + sy) * random.nextGaussian();
+			if (rotated) {
+				double gxx = 0.5 * (fxx + fyy) + fxy;
+				double gyy = 0.5 * (fxx + fyy) - fxy;
+				fxy = 0.5 * (fyy - fxx);
+				fxx = gxx;
+				fyy = gyy;
+			}
+			in[0] += fxx * fxx;
+			in[1] += fxy * fxy;
+			in[2] += fyy * fyy;
+			in[3] += fxx * fyy;
+			in[4] += fxx * fxy;
+			in[5] += fyy * fxy;
+		}
+	}
+
+	private double energy(double in[], double a) {
+		double c = Math.cos(a);
+		double s = Math.sin(a);
+		return in[0] * c * c * c * c + 4.0 * in[4] * c * c * c * s 
+				+ (4.0 * in[1] + 2.0 * in[3]) * c * c * s * s 
+				+ 4.0 * in[5] * c * s * s * s + in[2] * s * s * s * s;
+	}
+
+}
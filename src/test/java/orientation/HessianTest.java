@@ -0,0 +1,103 @@
+//==============================================================================
+//
+// Project: Directional Image Analysis - OrientationJ plugin
+// 
+// Author: Daniel Sage
+// 
+// Organization: Biomedical Imaging Group (BIG)
+// Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+//
+// Information: 
+// OrientationJ: http://bigwww.epfl.ch/demo/orientation/
+// MonogenicJ: http://bigwww.epfl.ch/demo/monogenic/
+//  
+//
+// Reference on methods and plugin
+// Z. Püspöki, M. Storath, D. Sage, M. Unser
+// "Transforms and Operators for Directional Bioimage Analysis: A Survey," 
+// Advances in Anatomy, Embryology and Cell Biology, vol. 219, Focus on Bio-Image Informatics, 
+// Springer International Publishing, ch. 3, pp. 69-93, May 21, 2016.
+//
+// Reference on applications
+// E. Fonck, G.G. Feigl, J. Fasel, D. Sage, M. Unser, D.A. Ruefenacht, N. Stergiopulos 
+// "Effect of Aging on Elastin Functionality in Human Cerebral Arteries,"
+// Stroke, vol. 40, no. 7, pp. 2552-2556, July 2009.
+//
+// R. Rezakhaniha, A. Agianniotis, J.T.C. Schrauwen, A. Griffa, D. Sage, C.V.C. Bouten, F.N. van de Vosse, M. Unser, N. Stergiopulos
+// "Experimental Investigation of Collagen Waviness and Orientation in the Arterial Adventitia Using Confocal Laser Scanning Microscopy,"
+// Biomechanics and Modeling in Mechanobiology, vol. 11, no. 3-4, pp. 461-473, 2012.
+
+// Conditions of use: You'll be free to use this software for research purposes,
+// but you should not redistribute it without our consent. In addition, we 
+// expect you to include a citation or acknowledgment whenever you present or 
+// publish results that are based on it.
+//
+// History:
+// - Updated (Daniel Sage, 24 January 2011)
+// - Added the Vector field (Daniel Sage, 1 March 2017)
+//
+//==============================================================================
+
+package orientation;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import additionaluserinterface.WalkBar;
+import imageware.Builder;
+import imageware.ImageWare;
+
+/**
+ * The Hessian of a stack computed with several frames in flight must be 
+ * the Hessian of each frame computed alone.
+ */
+public class HessianTest {
+
+	private static final int NX = 67;
+	private static final int NY = 48;
+	private static final int NT = 5;
+
+	@Test
+	public void filterBank() {
+		check(0.0);
+	}
+
+	@Test
+	public void gaussian() {
+		check(1.5);
+	}
+
+	private void check(double sigmaHessian) {
+		WalkBar walk = new WalkBar();
+		OrientationParameters params = new OrientationParameters(OrientationService.ANALYSIS);
+		params.gradient = OrientationParameters.HESSIAN;
+		params.sigmaHessian = sigmaHessian;
+		params.framesInFlight = 3;
+
+		GroupImage gim = new GroupImage(walk, createStack(), params, true);
+		new Hessian(walk, gim, params).run();
+
+		for (int t=0; t<NT; t++) {
+			GroupImage frame = gim.getFrame(t);
+			new Hessian(walk, frame, params).run();
+			assertArrayEquals("hxx " + t, frame.hxx.getSliceFloat(0), gim.hxx.getSliceFloat(t), 0f);
+			assertArrayEquals("hyy " + t, frame.hyy.getSliceFloat(0), gim.hyy.getSliceFloat(t), 0f);
+			assertArrayEquals("hxy " + t, frame.hxy.getSliceFloat(0), gim.hxy.getSliceFloat(t), 0f);
+		}
+	}
+
+	private ImageWare createStack() {
+		Random random = new Random(1);
+		ImageWare stack = Builder.create(NX, NY, NT, ImageWare.FLOAT);
+		for (int t=0; t<NT; t++) {
+			float slice[] = stack.getSliceFloat(t);
+			for (int k=0; k<NX*NY; k++)
+				slice[k] = random.nextFloat();
+		}
+		return stack;
+	}
+
+}